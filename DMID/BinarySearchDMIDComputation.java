@@ -1,9 +1,8 @@
 package org.apache.giraph.examples;
 
-import java.util.HashMap;
-import java.util.Map;
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
 
-import org.apache.giraph.aggregators.matrix.sparse.DoubleSparseVector;
+import org.apache.giraph.conf.IntConfOption;
 import org.apache.giraph.examples.utils.BinarySearchDMIDMasterCompute;
 import org.apache.giraph.examples.utils.DMIDVertexValue;
 import org.apache.giraph.examples.utils.LongDoubleMessage;
@@ -12,13 +11,27 @@ import org.apache.hadoop.io.BooleanWritable;
 import org.apache.hadoop.io.DoubleWritable;
 import org.apache.hadoop.io.LongWritable;
 
+/**
+ * Binary search variant of DMID. Instead of lowering the profitability
+ * threshold until a cascade assigns every vertex, every cascade halves the
+ * interval of thresholds that contains the highest valid one. The best valid
+ * cover found after CASCADING_STEPS cascades is the result. Runs with
+ * {@link BinarySearchDMIDMasterCompute}.
+ */
+@Algorithm(name = "DMID binary search variant")
 public class BinarySearchDMIDComputation extends DMIDComputation {
 
-	/** maximum number of binary search cascading steps */
-	private static final int CASCADINGBOUND = 10;
+	/**
+	 * Number of cascades of the binary search. The search interval of the
+	 * profitability threshold is [0, 1], after n cascades the threshold is
+	 * known up to 2^-n.
+	 */
+	public static final IntConfOption CASCADING_STEPS = new IntConfOption(
+			"BinarySearchDMIDComputation.cascadingSteps", 10,
+			"Number of cascades of the binary search");
 
 	/**
-	 * SUPERSTEP RW_IT+8: Startpoint and first iteration point of the cascading
+	 * SUPERSTEP RW_IT+7: Startpoint and first iteration point of the cascading
 	 * behavior phase.
 	 **/
 	@Override
@@ -26,173 +39,67 @@ public class BinarySearchDMIDComputation extends DMIDComputation {
 			Vertex<LongWritable, DMIDVertexValue, DoubleWritable> vertex,
 			Iterable<LongDoubleMessage> messages) {
 
-		Long vertexID = vertex.getId().get();
-
-		/** Is this vertex a global leader? Global Leader do not change behavior */
-		if (!vertex.getValue().getMembershipDegree().containsKey(vertexID)) {
-
-			long numRestarts = getAggregatedValue(BinarySearchDMIDMasterCompute.RESTART_COUNTER_AGG);
-			if (numRestarts >= CASCADINGBOUND) {
-				/** put best valid cover/solution as MembershipDegree */
-				vertex.getValue().setMembershipDegree(
-						vertex.getValue().getBestValidMemDeg());
-				vertex.voteToHalt();
-			} else {
-				BooleanWritable notAllAssigned = getAggregatedValue(NOT_ALL_ASSIGNED_AGG);
-				if (notAllAssigned.get()) {
-					/** There are vertices that are not part of any community */
-					BooleanWritable newMember = getAggregatedValue(NEW_MEMBER_AGG);
-					if (!newMember.get()) {
-						/**
-						 * There are no changes in the behavior cascade but not
-						 * all vertices are assigned
-						 */
-						/** RESTART */
-						/** set MemDeg back to initial value */
-						initilaizeMemDeg(vertex);
-					}
-					/** ANOTHER ROUND */
-					/**
-					 * every 0 entry means vertex is not part of this community
-					 * request all successors to send their behavior to these
-					 * specific communities.
-					 **/
-
-					/** In case of first init test again if vertex is leader */
-					if (!vertex.getValue().getMembershipDegree()
-							.containsKey(vertexID)) {
-						for (Long leaderID : vertex.getValue()
-								.getMembershipDegree().keySet()) {
-							/**
-							 * message of the form (ownID, community ID of
-							 * interest)
-							 */
-							LongDoubleMessage msg = new LongDoubleMessage(
-									vertexID, leaderID);
-							sendMessageToAllEdges(vertex, msg);
-						}
-					} else {
-						vertex.voteToHalt();
-					}
-				} else {
-
-					/** All vertices are assigned to at least one community */
-					/** TERMINATION of one cascade */
-
-					/** save best valid cover/solution as BestValidMemDeg */
-					vertex.getValue().setBestValidMemDeg(
-							vertex.getValue().getMembershipDegree());
-
-					/** RESTART */
-					/** set MemDeg back to initial value */
-					initilaizeMemDeg(vertex);
-
-					/** ANOTHER Cascade */
-					if (!vertex.getValue().getMembershipDegree()
-							.containsKey(vertexID)) {
-						for (Long leaderID : vertex.getValue()
-								.getMembershipDegree().keySet()) {
-							/**
-							 * message of the form (ownID, community ID of
-							 * interest)
-							 */
-							LongDoubleMessage msg = new LongDoubleMessage(
-									vertexID, leaderID);
-							sendMessageToAllEdges(vertex, msg);
-						}
-					} else {
-						vertex.voteToHalt();
-					}
-				}
-			}
-		} else {
-			vertex.voteToHalt();
+		DMIDVertexValue vertexValue = vertex.getValue();
+		BooleanWritable notAllAssigned = getAggregatedValue(NOT_ALL_ASSIGNED_AGG);
+		LongWritable numCascades = getAggregatedValue(BinarySearchDMIDMasterCompute.RESTART_COUNTER_AGG);
+
+		if (!notAllAssigned.get()) {
+			/** All vertices are assigned to at least one community */
+			/**
+			 * save a copy of the best valid cover/solution as BestValidMemDeg,
+			 * the next cascade changes the MembershipDegree map
+			 */
+			vertexValue.setBestValidMemDeg(new Int2DoubleOpenHashMap(
+					vertexValue.getMembershipDegree()));
 		}
-	}
-
-	private void initilaizeMemDeg(
-			Vertex<LongWritable, DMIDVertexValue, DoubleWritable> vertex) {
-
-		DoubleSparseVector vecGL = getAggregatedValue(GL_AGG);
-		HashMap<Long, Double> newMemDeg = new HashMap<Long, Double>();
-
-		for (long i = 0; i < getTotalNumVertices(); ++i) {
-			/** is entry i a global leader? */
-			if (vecGL.get((int) i) == 1.0) {
 
-				if (((long) i) == vertex.getId().get()) {
-					/**
-					 * This vertex is a global leader. Set Membership degree to
-					 * 100%
-					 */
-					newMemDeg.put(new Long(i), new Double(1.0));
-				} else {
-					newMemDeg.put(new Long(i), new Double(0.0));
-				}
+		if (numCascades.get() >= CASCADING_STEPS.get(getConf())) {
+			/** TERMINATION: put best valid cover/solution as MembershipDegree */
+			if (vertexValue.getBestValidMemDeg() != null) {
+				vertexValue.setMembershipDegree(vertexValue
+						.getBestValidMemDeg());
+				vertexValue.setBestValidMemDeg(null);
 			}
+			haltCascading(vertex);
+			return;
 		}
 
-		vertex.getValue().setMembershipDegree(newMemDeg);
+		/**
+		 * If the cascade ended, valid or not, the master RESTARTS it with a
+		 * new threshold: set MemDeg back to initial value
+		 */
+		startCascadingStep(vertex);
+		LongWritable iterationCounter = getAggregatedValue(ITERATION_AGG);
+		/** Is this vertex a global leader? Global Leader do not change behavior */
+		if (iterationCounter.get() != 1 && !isGlobalLeader(vertex)
+				&& isInFrontier(messages)) {
+			/** ANOTHER ROUND */
+			sendMembershipRequest(vertex);
+		}
+		endCascadingStep(vertex);
 	}
 
-	/** The same as the superstep10 of the basic DMID */
+	/**
+	 * Every vertex saves the cover of every valid cascade, see superstep8,
+	 * so no vertex halts before the termination.
+	 */
 	@Override
-	public void superstep10(
-			Vertex<LongWritable, DMIDVertexValue, DoubleWritable> vertex,
-			Iterable<LongDoubleMessage> messages) {
-
-		long vertexID = vertex.getId().get();
-
-		/** Is this vertex a global leader? */
-		if (!vertex.getValue().getMembershipDegree().containsKey(vertexID)) {
-			/** counts per communities the number of successors which are member */
-			HashMap<Long, Double> membershipCounter = new HashMap<Long, Double>();
-			double previousCount = 0.0;
-
-			for (LongDoubleMessage msg : messages) {
-				/**
-				 * the msg value is the index of the community the sender is a
-				 * member of
-				 */
-				Long leaderID = ((long) msg.getValue());
-
-				if (membershipCounter.containsKey(leaderID)) {
-					/** increase count by 1 */
-					previousCount = membershipCounter.get(leaderID);
-					membershipCounter.put(leaderID, previousCount + 1);
-
-				} else {
-					membershipCounter.put(leaderID, 1.0);
-				}
-			}
-			/** profitability threshold */
-			DoubleWritable threshold = getAggregatedValue(PROFITABILITY_AGG);
-
-			LongWritable iterationCounter = getAggregatedValue(ITERATION_AGG);
-
-			for (Map.Entry<Long, Double> entry : membershipCounter.entrySet()) {
-				if ((entry.getValue() / vertex.getNumEdges()) > threshold.get()) {
-					/** its profitable to become a member, set value */
-					vertex.getValue()
-							.getMembershipDegree()
-							.put(entry.getKey(),
-									(1.0 / Math.pow(iterationCounter.get() / 3,
-											2)));
-					aggregate(NEW_MEMBER_AGG, new BooleanWritable(true));
-				}
-			}
-			boolean isPartOfAnyCommunity = false;
-			for (Map.Entry<Long, Double> entry : vertex.getValue()
-					.getMembershipDegree().entrySet()) {
-				if (entry.getValue() != 0.0) {
-					isPartOfAnyCommunity = true;
-				}
-			}
-			if (!isPartOfAnyCommunity) {
-				aggregate(NOT_ALL_ASSIGNED_AGG, new BooleanWritable(true));
-			}
-		}
+	boolean staysActive(
+			Vertex<LongWritable, DMIDVertexValue, DoubleWritable> vertex) {
+		return true;
+	}
 
+	/** Every cascade starts from the global leaders */
+	@Override
+	boolean hasWarmRestarts() {
+		return false;
 	}
 
+	/** The same as the threshold of the basic DMID */
+	@Override
+	double getProfitabilityThreshold(
+			Vertex<LongWritable, DMIDVertexValue, DoubleWritable> vertex) {
+		DoubleWritable threshold = getAggregatedValue(PROFITABILITY_AGG);
+		return threshold.get();
+	}
 }
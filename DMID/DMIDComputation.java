@@ -1,18 +1,34 @@
 package org.apache.giraph.examples;
 
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.HashSet;
-
+import java.util.Arrays;
+
+import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+
+import org.apache.giraph.conf.BooleanConfOption;
+import org.apache.giraph.conf.FloatConfOption;
+import org.apache.giraph.conf.IntConfOption;
+import org.apache.giraph.conf.LongConfOption;
 import org.apache.giraph.graph.BasicComputation;
 import org.apache.giraph.graph.Vertex;
 import org.apache.giraph.edge.Edge;
 import org.apache.giraph.examples.utils.LongDoubleMessage;
+import org.apache.giraph.examples.utils.DMIDMasterCompute;
+import org.apache.giraph.examples.utils.DMIDPhase;
 import org.apache.giraph.examples.utils.DMIDVertexValue;
-import org.apache.giraph.aggregators.matrix.sparse.DoubleSparseVector;
-import org.apache.giraph.aggregators.matrix.dense.DoubleDenseVector;
+import org.apache.giraph.examples.utils.DMIDWorkerContext;
+import org.apache.giraph.examples.utils.GlobalLeaderTable;
+import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.BooleanWritable;
 import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.LongWritable;
 
 /**
@@ -24,21 +40,24 @@ public abstract class DMIDComputation
 		extends
 		BasicComputation<LongWritable, DMIDVertexValue, DoubleWritable, LongDoubleMessage> {
 
-	/** Aggregator name of the DMID disassortativity vector DA */
-	public static final String DA_AGG = "aggDA";
+	/**
+	 * Aggregator name of the sum of the follower degrees of all local leaders
+	 */
+	public static final String FD_AGG = "aggFD";
 
-	/** Aggregator name of the DMID leadership vector LS */
-	public static final String LS_AGG = "aggLS";
+	/** Aggregator name of the number of local leaders */
+	public static final String LOCAL_LEADERS_AGG = "aggLocalLeaders";
 
 	/**
-	 * Aggregator name of the FollowerDegree vector where entry i determines how
-	 * many follower vertex i has
+	 * Aggregator name of the average follower degree of the local leaders.
+	 * Set by the master. Local leaders with a higher follower degree are
+	 * global leaders.
 	 */
-	public static final String FD_AGG = "aggFD";
+	public static final String AVERAGE_FD_AGG = "aggAverageFD";
 
 	/**
-	 * Aggregator name of the DMID GlobalLeader vector where entry i determines
-	 * if vertex i is a global leader
+	 * Aggregator name of the DMID GlobalLeader table. Holds the IDs of all
+	 * global leaders, see {@link GlobalLeaderTable}
 	 */
 	public static final String GL_AGG = "aggGL";
 
@@ -51,10 +70,18 @@ public abstract class DMIDComputation
 	/**
 	 * Aggregator name of the all vertices assigned flag Indicates if there is a
 	 * vertex that did not adopted a behavior in the Cascading Behavior Phase of
-	 * DMID
+	 * DMID. Set by the master from ASSIGNED_AGG at the end of every iteration.
 	 **/
 	public static final String NOT_ALL_ASSIGNED_AGG = "aggNotAllAssigned";
 
+	/**
+	 * Aggregator name of the number of vertices that are member of at least
+	 * one community. Persistent, the master sets it to the number of global
+	 * leaders on a start and a cold restart, a vertex adds 1 when it joins its
+	 * first community.
+	 **/
+	public static final String ASSIGNED_AGG = "aggAssigned";
+
 	/**
 	 * Aggregator name of the iteration count. Denotes the current iteration of
 	 * the cascading behavior phase times 3 (each step in the cascading behavior
@@ -68,88 +95,220 @@ public abstract class DMIDComputation
 	 */
 	public static final String PROFITABILITY_AGG = "aggProfit";
 
-	/** Maximum steps for the random walk, corresponds to t*. Default = 1000 */
-	public static final long RW_ITERATIONBOUND = 10;
+	/**
+	 * Maximum steps for the random walk, corresponds to t*. Default = 10. The
+	 * random walk may stop earlier if it converges and RW_PRECISION is set.
+	 */
+	public static final LongConfOption RW_ITERATIONBOUND = new LongConfOption(
+			"DMIDComputation.rwIterationBound", 10,
+			"Maximum number of random walk steps");
+
+	/**
+	 * Precision factor of the random walk. The random walk phase ends when the
+	 * infinity norm of the difference between the updated DA vector and the
+	 * previous one, relative to the mean DA entry 1/N, is smaller than this
+	 * factor. The DA entries are at most 1/N, so an absolute bound would end
+	 * the walk after one step on large graphs. The default 0 disables the
+	 * check and the random walk always takes RW_ITERATIONBOUND steps.
+	 */
+	public static final FloatConfOption RW_PRECISION = new FloatConfOption(
+			"DMIDComputation.rwPrecision", 0f,
+			"Precision factor ending the random walk");
+
+	/**
+	 * Declares the input graph undirected: every edge is stored in both
+	 * directions with the same weight. The predecessors of a vertex are then
+	 * its successors, so every vertex reads them and the weighted in-degree
+	 * from its out-edges and the superstep that sends the edge weights is
+	 * skipped. The result is wrong if an edge lacks its reverse.
+	 */
+	public static final BooleanConfOption UNDIRECTED = new BooleanConfOption(
+			"DMIDComputation.undirected", false,
+			"The input stores every edge in both directions");
 
 	/**
 	 * Aggregator name for the random walk precision factor. Stores the infinity
 	 * norm of the difference between the updated vector and the previous one.
-	 * The random walk phase ends when the aggregator stores a value smaller
-	 * than 0.001.
+	 * The random walk phase ends when this value times N is smaller than
+	 * RW_PRECISION.
+	 */
+	public static final String RW_INFINITYNORM_AGG = "aggPrecision";
+
+	/**
+	 * Protocol of the cascading behavior phase. By default every iteration
+	 * takes three supersteps: the vertices request the memberships of their
+	 * successors, the successors reply and the vertices count the replies. In
+	 * push mode a vertex that joins a community sends it to its predecessors,
+	 * which keep the member counts of their successors, and every iteration
+	 * takes one superstep. Parallel edges count once in push mode. Not
+	 * supported by the binary search variant.
+	 */
+	public static final BooleanConfOption PUSH_CASCADING = new BooleanConfOption(
+			"DMIDComputation.pushCascading", false,
+			"Push new memberships to the predecessors in the cascading phase");
+
+	/**
+	 * Restart mode of the cascading behavior phase. By default a restart with
+	 * a lower profitability threshold starts the cascade again from the
+	 * global leaders. A warm restart keeps the memberships, which are still
+	 * profitable at the lower threshold, and their membership degrees. The
+	 * iteration count goes on, so new members get lower degrees. The cover
+	 * is a different one: the cascade ends as soon as every vertex is
+	 * assigned, before the lower threshold adds the memberships a cold
+	 * restart would find. Not supported by the binary search variant.
+	 */
+	public static final BooleanConfOption WARM_RESTART = new BooleanConfOption(
+			"DMIDComputation.warmRestart", false,
+			"Keep the memberships on a restart of the cascading phase");
+
+	/**
+	 * Number of profitability thresholds the cascading behavior phase tries
+	 * at once. Each threshold has its own lane of memberships, the master
+	 * keeps the lane of the highest threshold that assigns every vertex. This
+	 * replaces up to that many restarts by one cascade. Values above 1 use
+	 * the push protocol, see PUSH_CASCADING, with at most 63 lanes. Not
+	 * supported by the binary search variant.
+	 */
+	public static final IntConfOption SPECULATIVE_THRESHOLDS = new IntConfOption(
+			"DMIDComputation.speculativeThresholds", 1,
+			"Number of profitability thresholds tried in one cascade");
+
+	/**
+	 * Aggregator names of the speculative mode, bit sets of lanes. Lanes in
+	 * which a vertex adopted a behavior, lanes in which a vertex is not
+	 * assigned, lanes the master ended (persistent).
+	 **/
+	public static final String NEW_MEMBER_LANES_AGG = "aggNewMemberLanes";
+	public static final String NOT_ALL_ASSIGNED_LANES_AGG = "aggNotAllAssignedLanes";
+	public static final String FINISHED_LANES_AGG = "aggFinishedLanes";
+
+	/**
+	 * Aggregator name of the lane selected by the master in the speculative
+	 * mode, -1 while undecided. Persistent, only set by the master.
+	 **/
+	public static final String SELECTED_LANE_AGG = "aggSelectedLane";
+
+	/**
+	 * Aggregator name of the phase of the current superstep, the ordinal of
+	 * a {@link DMIDPhase}. Persistent, only set by the master.
+	 **/
+	public static final String PHASE_AGG = "aggPhase";
+
+	/**
+	 * Global leaders of the cascading behavior phase, shared by all vertices
+	 * of the worker. Null before the phase started.
+	 */
+	GlobalLeaderTable globalLeaders;
+
+	/**
+	 * Membership counts of the current vertex in superstep10, indexed by
+	 * leader index. Reused for all vertices of this compute thread. Only the
+	 * entries listed in touchedLeaders are non-zero, so resetting takes
+	 * O(touched) instead of O(L).
+	 */
+	private int[] leaderCounts;
+	private int[] touchedLeaders;
+
+	/**
+	 * Messages and target ID reused for all messages sent by this compute
+	 * thread. sendMessage serializes the message and the target ID, so both
+	 * can be changed right after the call.
+	 */
+	private final LongDoubleMessage valueMessage = new LongDoubleMessage();
+	private final LongDoubleMessage requestMessage = new LongDoubleMessage(0,
+			new int[0], 0);
+	private final LongDoubleMessage replyMessage = new LongDoubleMessage(
+			new int[0], 0);
+	private final LongWritable targetID = new LongWritable();
+
+	/**
+	 * Scratch arrays of this compute thread, grown on demand. idBuffer and
+	 * valueBuffer hold the predecessors in superstep1 and the disCol in
+	 * superstep2, leaderBuffer the leader indices of the cascading behavior
+	 * messages. The vertex value copies what it keeps.
 	 */
-	//public static final String RW_INFINITYNORM_AGG = "aggPrecision";
-	
-	/** Aggregator name. Holds the superstep on which the random walk phase finished*/
-	//public static final String RW_FINISHED_AGG="aggFinishedRW";
+	private long[] idBuffer = new long[16];
+	private double[] valueBuffer = new double[16];
+	private int[] leaderBuffer = new int[16];
+
+	/** Local leaders of the current vertex in superstep7 */
+	private final LongOpenHashSet leaderSet = new LongOpenHashSet();
+
+	/** Phase of the current superstep, chosen by the master */
+	private DMIDPhase phase;
+
+	/**
+	 * Global leaders found by this compute thread in superstepGL. Handed to
+	 * the worker context, which aggregates one table per worker.
+	 */
+	private final LongArrayList localLeaders = new LongArrayList();
+
+	@Override
+	public void preSuperstep() {
+		DMIDWorkerContext workerContext = getWorkerContext();
+		globalLeaders = workerContext.getGlobalLeaders();
+		IntWritable phaseOrdinal = getAggregatedValue(PHASE_AGG);
+		phase = DMIDPhase.valueOf(phaseOrdinal.get());
+	}
+
+	@Override
+	public void postSuperstep() {
+		if (!localLeaders.isEmpty()) {
+			DMIDWorkerContext workerContext = getWorkerContext();
+			workerContext.addGlobalLeaders(localLeaders);
+			localLeaders.clear();
+		}
+	}
 
 	@Override
 	public void compute(
 			Vertex<LongWritable, DMIDVertexValue, DoubleWritable> vertex,
 			Iterable<LongDoubleMessage> messages) throws IOException {
 
-		if (getSuperstep() == 0) {
+		switch (phase) {
+		case EDGE_WEIGHTS:
 			superstep0(vertex, messages);
-		}
-
-		if (getSuperstep() == 1) {
+			break;
+		case WEIGHTED_IN_DEGREE:
 			superstep1(vertex, messages);
-		}
-
-		if (getSuperstep() == 2) {
+			break;
+		case DISASSORTATIVITY:
 			superstep2(vertex, messages);
-		}
-		
-		//double rwPrecision = ((DoubleWritable)getAggregatedValue(RW_INFINITYNORM_AGG)).get();
-		
-		if ((getSuperstep() >= 3 && getSuperstep() <= RW_ITERATIONBOUND + 3) /*&& (getSuperstep() == 3 || rwPrecision >0.001)*/ ) {
-			/**
-			 * TODO: Integrate a precision factor for the random walk phase. The
-			 * phase ends when the infinity norm of the difference between the
-			 * updated vector and the previous one is smaller than this factor.
-			 */
+			break;
+		case RANDOM_WALK:
 			superstepRW(vertex, messages);
-		}
-
-		long rwFinished = RW_ITERATIONBOUND + 4;
-		
-		
-		if (getSuperstep() == rwFinished) {
+			break;
+		case LEADERSHIP:
 			superstep4(vertex, messages);
-		}
-
-		if (getSuperstep() == rwFinished +1) {
-			/**
-			 * Superstep 0 and RW_ITERATIONBOUND + 5 are identical. Therefore
-			 * call superstep0
-			 */
-			superstep0(vertex, messages);
-		}
-
-		if (getSuperstep() == rwFinished+2) {
+			break;
+		case INFLUENCE:
 			superstep6(vertex, messages);
-		}
-
-		if (getSuperstep() == rwFinished + 3) {
+			break;
+		case LOCAL_LEADERS:
 			superstep7(vertex, messages);
-			
-		}
-
-		LongWritable iterationCounter = getAggregatedValue(ITERATION_AGG);
-		double it = iterationCounter.get();
-
-		if (getSuperstep() >= rwFinished +4
-				&& (it % 3 == 1 )) {
+			break;
+		case FOLLOWER_DEGREE:
+			superstepFD(vertex, messages);
+			break;
+		case GLOBAL_LEADERS:
+			superstepGL(vertex, messages);
+			break;
+		case CASCADING_REQUEST:
 			superstep8(vertex, messages);
-		}
-		if (getSuperstep() >= rwFinished +5
-				&& (it % 3 == 2 )) {
+			break;
+		case CASCADING_REPLY:
 			superstep9(vertex, messages);
-		}
-		if (getSuperstep() >= rwFinished +6
-				&& (it % 3 == 0 )) {
+			break;
+		case CASCADING_COUNT:
 			superstep10(vertex, messages);
+			break;
+		case CASCADING_PUSH:
+			superstepPush(vertex, messages);
+			break;
+		case CASCADING_SPECULATIVE:
+			superstepSpeculative(vertex, messages);
+			break;
 		}
-
 	}
 
 	/**
@@ -160,56 +319,101 @@ public abstract class DMIDComputation
 			Vertex<LongWritable, DMIDVertexValue, DoubleWritable> vertex,
 			Iterable<LongDoubleMessage> messages) {
 
-		long vertexID = vertex.getId().get();
+		LongDoubleMessage msg = valueMessage;
+		msg.setSourceVertexId(vertex.getId().get());
 
 		for (Edge<LongWritable, DoubleWritable> edge : vertex.getEdges()) {
-			LongDoubleMessage msg = new LongDoubleMessage(vertexID, edge
-					.getValue().get());
+			msg.setValue(edge.getValue().get());
 			sendMessage(edge.getTargetVertexId(), msg);
 		}
 	}
 
 	/**
-	 * SUPERSTEP 1: Calculate and save new weightedInDegree. Send a message of
-	 * the form (ID,weightedInDegree) along all incoming edges (send every node
-	 * a reply)
+	 * SUPERSTEP 1: Save the predecessors and the weights of their edges, the
+	 * reverse adjacency of this vertex. Calculate and save new
+	 * weightedInDegree from it. Send a message of the form
+	 * (ID,weightedInDegree) along all incoming edges (send every node a reply).
+	 * Superstep 0 in undirected mode, see UNDIRECTED.
 	 */
 	private void superstep1(
 			Vertex<LongWritable, DMIDVertexValue, DoubleWritable> vertex,
 			Iterable<LongDoubleMessage> messages) {
 
-		double weightedInDegree = 0.0;
-
-		/** vertices that need a reply containing this vertexs weighted indegree */
-		HashSet<Long> predecessors = new HashSet<Long>();
+		/**
+		 * vertices that need a reply containing this vertexs weighted indegree
+		 * and the weights of their edges to this vertex
+		 */
+		long[] predecessorIDs = idBuffer;
+		double[] predecessorWeights = valueBuffer;
+		int numEntries = 0;
 
+		if (UNDIRECTED.get(getConf())) {
+			/**
+			 * First superstep in undirected mode, no messages. The
+			 * predecessors are the successors.
+			 */
+			if (predecessorIDs.length < vertex.getNumEdges()) {
+				predecessorIDs = new long[vertex.getNumEdges()];
+				predecessorWeights = new double[vertex.getNumEdges()];
+			}
+			for (Edge<LongWritable, DoubleWritable> edge : vertex.getEdges()) {
+				predecessorIDs[numEntries] = edge.getTargetVertexId().get();
+				predecessorWeights[numEntries] = edge.getValue().get();
+				numEntries++;
+			}
+		}
 		for (LongDoubleMessage msg : messages) {
 			/**
-			 * sum of all incoming edge weights (weightedInDegree).
 			 * msg.getValue() contains the edgeWeight of an incoming edge. msg
 			 * was send by msg.getSourceVertexId()
-			 * 
 			 */
-			predecessors.add(msg.sourceVertexId);
-			weightedInDegree += msg.getValue();
+			if (numEntries == predecessorIDs.length) {
+				predecessorIDs = Arrays.copyOf(predecessorIDs, 2 * numEntries);
+				predecessorWeights = Arrays.copyOf(predecessorWeights,
+						2 * numEntries);
+			}
+			predecessorIDs[numEntries] = msg.getSourceVertexId();
+			predecessorWeights[numEntries] = msg.getValue();
+			numEntries++;
 		}
-		/** update new weightedInDegree */
+		idBuffer = predecessorIDs;
+		valueBuffer = predecessorWeights;
+
+		/**
+		 * save the predecessors. They are the receivers of the DA entry of
+		 * this vertex in the random walk phase and of the memberships in push
+		 * mode. The weights of their edges are needed to find the followers.
+		 */
 		DMIDVertexValue vertexValue = vertex.getValue();
+		vertexValue.setPredecessors(predecessorIDs, predecessorWeights,
+				numEntries);
+
+		/**
+		 * sum of all incoming edge weights (weightedInDegree). Summed in the
+		 * order of the predecessor IDs, independent of the message order.
+		 */
+		double weightedInDegree = 0.0;
+		for (double weight : vertexValue.getPredecessorWeights()) {
+			weightedInDegree += weight;
+		}
 		vertexValue.setWeightedInDegree(weightedInDegree);
 		vertex.setValue(vertexValue);
 
-		LongDoubleMessage msg = new LongDoubleMessage(vertex.getId().get(),
-				weightedInDegree);
-		for (Long msgTargetID : predecessors) {
-			sendMessage(new LongWritable(msgTargetID), msg);
+		LongDoubleMessage msg = valueMessage;
+		msg.setSourceVertexId(vertex.getId().get());
+		msg.setValue(weightedInDegree);
+		for (long msgTargetID : vertexValue.getPredecessors()) {
+			targetID.set(msgTargetID);
+			sendMessage(targetID, msg);
 		}
 	}
 
 	/**
 	 * SUPERSTEP 2: Iterate over all messages. Set the entries of the
 	 * disassortativity matrix column with index vertexID. Normalize the column.
-	 * Save the column as a part of the vertexValue. Aggregate DA with value 1/N
-	 * to initialize the Random Walk.
+	 * Save the column as a part of the vertexValue. Initialize the own entry of
+	 * DA with value 1/N and send it to the predecessors to start the Random
+	 * Walk.
 	 */
 	private void superstep2(
 			Vertex<LongWritable, DMIDVertexValue, DoubleWritable> vertex,
@@ -222,10 +426,20 @@ public abstract class DMIDComputation
 
 		/** disValue = disassortativity value of senderID and ownID */
 		double disValue = 0;
-		DoubleSparseVector disVector = new DoubleSparseVector(
-				(int) getTotalNumVertices());
 
-		/** Sum of all disVector entries */
+		/**
+		 * Non-zero entries of the new disCol. Every successor sends one
+		 * message, so the out-degree is the expected number of entries
+		 */
+		int numEntries = 0;
+		if (idBuffer.length < vertex.getNumEdges()) {
+			idBuffer = new long[vertex.getNumEdges()];
+			valueBuffer = new double[vertex.getNumEdges()];
+		}
+		long[] disIDs = idBuffer;
+		double[] disValues = valueBuffer;
+
+		/** Sum of all disCol entries */
 		double disSum = 0;
 
 		/** Set up new disCol */
@@ -235,83 +449,122 @@ public abstract class DMIDComputation
 			senderWeight = msg.getValue();
 
 			disValue = Math.abs(ownWeight - senderWeight);
+			if (disValue == 0) {
+				continue;
+			}
 			disSum += disValue;
 
-			disVector.set((int) senderID, disValue);
+			if (numEntries == disIDs.length) {
+				disIDs = Arrays.copyOf(disIDs, 2 * numEntries);
+				disValues = Arrays.copyOf(disValues, 2 * numEntries);
+			}
+			disIDs[numEntries] = senderID;
+			disValues[numEntries] = disValue;
+			numEntries++;
 		}
-		/**
-		 * Normalize the new disCol (Note: a new Vector is automatically
-		 * initialized 0.0f entries)
-		 */
-		
-		for (int i = 0; disSum != 0 && i < (int) getTotalNumVertices(); ++i) {
-			disVector.set(i, (disVector.get(i) / disSum));
-			
+		idBuffer = disIDs;
+		valueBuffer = disValues;
+		/** Normalize the new disCol, only the non-zero entries are stored */
+		for (int i = 0; disSum != 0 && i < numEntries; ++i) {
+			disValues[i] = disValues[i] / disSum;
 		}
 
 		/** save the new disCol in the vertexValue */
-		vertex.getValue().setDisCol(disVector, getTotalNumVertices());
+		vertex.getValue().setDisCol(disIDs, disValues, numEntries);
 		/**
 		 * Initialize DA for the RW steps with 1/N for your own entry
-		 * (aggregatedValue will be(1/N,..,1/N) in the next superstep)
+		 * (DA will be (1/N,..,1/N) in the next superstep)
 		 * */
-		DoubleDenseVector init = new DoubleDenseVector(
-				(int) getTotalNumVertices());
-		init.set((int) vertex.getId().get(), (double) 1.0
-				/ getTotalNumVertices());
+		double initDA = 1.0 / getTotalNumVertices();
+		vertex.getValue().setDAEntry(initDA);
 
-		aggregate(DA_AGG, init);
+		sendDAEntry(vertex, initDA);
 	}
 
 	/**
-	 * SUPERSTEP 3 - RW_ITERATIONBOUND+3: Calculate entry DA^(t+1)_ownID using
-	 * DA^t and disCol. Save entry in the DA aggregator.
+	 * SUPERSTEP 3 - rwFinished-1: Calculate entry DA^(t+1)_ownID using the DA^t
+	 * entries received from the successors and disCol. Aggregate the change of
+	 * the entry for the precision check of the master. Send the new entry to
+	 * the predecessors for the next step of the random walk.
 	 */
 	private void superstepRW(
 			Vertex<LongWritable, DMIDVertexValue, DoubleWritable> vertex,
 			Iterable<LongDoubleMessage> messages) {
 
-		DoubleDenseVector curDA = getAggregatedValue(DA_AGG);
-		DoubleSparseVector disCol = vertex.getValue().getDisCol();
+		DMIDVertexValue vertexValue = vertex.getValue();
 
 		/**
-		 * Calculate DA^(t+1)_ownID by multiplying DA^t (=curDA) and column
-		 * vertexID of T (=disCol)
+		 * Calculate DA^(t+1)_ownID by multiplying DA^t and column vertexID of
+		 * T (=disCol). Only the successors have a non-zero entry in disCol,
+		 * each of them sent its DA^t entry.
 		 */
 		/** (corresponds to vector matrix multiplication R^1xN * R^NxN) */
 		double newEntryDA = 0.0;
-		for (int i = 0; i < getTotalNumVertices(); ++i) {
-			newEntryDA += (curDA.get(i) * disCol.get(i));
+		for (LongDoubleMessage msg : messages) {
+			newEntryDA += (msg.getValue() * vertexValue.getDisValue(msg
+					.getSourceVertexId()));
+		}
+		/** Entry of the infinity norm of DA^(t+1) - DA^t */
+		double entryDiff = Math.abs(newEntryDA - vertexValue.getDAEntry());
+		aggregate(RW_INFINITYNORM_AGG, new DoubleWritable(entryDiff));
+		vertexValue.setDAEntry(newEntryDA);
+
+		if (getSuperstep() < getLastRandomWalkSuperstep(getConf())) {
+			/** Another step of the random walk follows */
+			sendDAEntry(vertex, newEntryDA);
 		}
-		
-		DoubleDenseVector newDA = new DoubleDenseVector(
-				(int) getTotalNumVertices());
-		newDA.set((int) vertex.getId().get(), newEntryDA);
-		aggregate(DA_AGG, newDA);
-		
 	}
 
 	/**
-	 * SUPERSTEP RW_ITERATIONBOUND+4: Calculate entry LS_ownID using DA^t* and
-	 * weightedInDegree. Save entry in the LS aggregator.
+	 * Returns the superstep of the last random walk step, RW_ITERATIONBOUND
+	 * steps after the superstep that starts the random walk. The undirected
+	 * mode starts one superstep earlier.
+	 */
+	public static long getLastRandomWalkSuperstep(Configuration conf) {
+		return RW_ITERATIONBOUND.get(conf) + (UNDIRECTED.get(conf) ? 2 : 3);
+	}
+
+	/**
+	 * Send the entry DA_ownID to all predecessors. Each predecessor holds the
+	 * disCol entry belonging to this vertex.
+	 */
+	private void sendDAEntry(
+			Vertex<LongWritable, DMIDVertexValue, DoubleWritable> vertex,
+			double entryDA) {
+
+		LongDoubleMessage msg = valueMessage;
+		msg.setSourceVertexId(vertex.getId().get());
+		msg.setValue(entryDA);
+		for (long predecessorID : vertex.getValue().getPredecessors()) {
+			targetID.set(predecessorID);
+			sendMessage(targetID, msg);
+		}
+	}
+
+	/**
+	 * SUPERSTEP rwFinished: Calculate entry LS_ownID using DA^t* and
+	 * weightedInDegree. Save entry in the vertex value. Send a message along
+	 * all outgoing edges, it contains own VertexID and the own entry of LS.
+	 * The receivers know the weights of the edges from the predecessors
+	 * since superstep1, so LS is all they need to find their followers.
 	 */
 	private void superstep4(
 			Vertex<LongWritable, DMIDVertexValue, DoubleWritable> vertex,
 			Iterable<LongDoubleMessage> messages) {
 
-		DoubleDenseVector finalDA = getAggregatedValue(DA_AGG);
+		double finalDA = vertex.getValue().getDAEntry();
 		double weightedInDegree = vertex.getValue().getWeightedInDegree();
-		int vertexID = (int) vertex.getId().get();
 
-		DoubleDenseVector tmpLS = new DoubleDenseVector(
-				(int) getTotalNumVertices());
-		tmpLS.set(vertexID, (weightedInDegree * finalDA.get(vertexID)));
+		vertex.getValue().setLeadership(weightedInDegree * finalDA);
 
-		aggregate(LS_AGG, tmpLS);
+		LongDoubleMessage msg = valueMessage;
+		msg.setSourceVertexId(vertex.getId().get());
+		msg.setValue(vertex.getValue().getLeadership());
+		sendMessageToAllEdges(vertex, msg);
 	}
 
 	/**
-	 * SUPERSTEP RW_IT+6: iterate over received messages. Determine if this
+	 * SUPERSTEP RW_IT+5: iterate over received messages. Determine if this
 	 * vertex has more influence on the sender than the sender has on this
 	 * vertex. If that is the case the sender is a possible follower of this
 	 * vertex and therefore vertex sends a message back containing the influence
@@ -322,59 +575,50 @@ public abstract class DMIDComputation
 			Vertex<LongWritable, DMIDVertexValue, DoubleWritable> vertex,
 			Iterable<LongDoubleMessage> messages) {
 
-		/** Weight= weightedInDegree */
+		/** Weight of the edge from the sender to this vertex */
 		double senderWeight = 0.0;
 		long senderID;
 
-		boolean hasEdgeToSender = false;
+		DMIDVertexValue vertexValue = vertex.getValue();
+		double ownLS = vertexValue.getLeadership();
 
 		for (LongDoubleMessage msg : messages) {
 
 			senderID = msg.getSourceVertexId();
-			senderWeight = msg.getValue();
+			/** the sender is a predecessor, it sent along its edge */
+			senderWeight = vertexValue.getPredecessorWeight(senderID);
 
-			DoubleDenseVector vecLS = getAggregatedValue(LS_AGG);
+			/**
+			 * The weight of the edge to the sender, null if there is none.
+			 * O(log(out-degree)) with DMIDOutEdges, see README.
+			 */
+			targetID.set(senderID);
+			DoubleWritable edgeToSender = vertex.getEdgeValue(targetID);
 
 			/**
-			 * hasEdgeToSender determines if sender has influence on this vertex
+			 * If there is an edge to the sender: Has this vertex more
+			 * influence on the sender than the sender on this vertex? The
+			 * message contains the LS entry of the sender.
 			 */
-			hasEdgeToSender = false;
-			for (Edge<LongWritable, DoubleWritable> edge : vertex.getEdges()) {
-				if (edge.getTargetVertexId().get() == senderID) {
-
-					hasEdgeToSender = true;
-					/**
-					 * Has this vertex more influence on the sender than the
-					 * sender on this vertex?
-					 */
-					if (senderWeight * vecLS.get((int) vertex.getId().get()) > edge
-							.getValue().get() * vecLS.get((int) senderID)) {
-						/** send new message */
-						LongDoubleMessage newMsg = new LongDoubleMessage(vertex
-								.getId().get(), senderWeight
-								* vecLS.get((int) vertex.getId().get()));
-
-						sendMessage(new LongWritable(senderID), newMsg);
-					}
-				}
-			}
-			if (!hasEdgeToSender) {
+			if (edgeToSender == null
+					|| senderWeight * ownLS > edgeToSender.get()
+							* msg.getValue()) {
 				/** send new message */
-				LongDoubleMessage newMsg = new LongDoubleMessage(vertex.getId()
-						.get(), senderWeight
-						* vecLS.get((int) vertex.getId().get()));
+				LongDoubleMessage newMsg = valueMessage;
+				newMsg.setSourceVertexId(vertex.getId().get());
+				newMsg.setValue(senderWeight * ownLS);
 
-				sendMessage(new LongWritable(senderID), newMsg);
+				sendMessage(targetID, newMsg);
 			}
 
 		}
 	}
 
 	/**
-	 * SUPERSTEP RW_IT+7: Find the local leader of this vertex. The local leader
+	 * SUPERSTEP RW_IT+6: Find the local leader of this vertex. The local leader
 	 * is the sender of the message with the highest influence on this vertex.
-	 * There may be more then one local leader. Add 1/k to the FollowerDegree
-	 * (aggregator) of the k local leaders found.
+	 * There may be more then one local leader. Send 1/k to each of the k
+	 * local leaders found, the share of this vertex in their FollowerDegree.
 	 **/
 	private void superstep7(
 			Vertex<LongWritable, DMIDVertexValue, DoubleWritable> vertex,
@@ -384,7 +628,8 @@ public abstract class DMIDComputation
 		double maxInfValue = 0;
 
 		/** Set of possible local leader for this vertex. Contains VertexID's */
-		HashSet<Long> leaderSet = new HashSet<Long>();
+		LongOpenHashSet leaderSet = this.leaderSet;
+		leaderSet.clear();
 
 		/** Find possible local leader */
 		for (LongDoubleMessage msg : messages) {
@@ -405,156 +650,659 @@ public abstract class DMIDComputation
 		}
 
 		int leaderSetSize = leaderSet.size();
-		DoubleSparseVector newFD = new DoubleSparseVector(
-				(int) getTotalNumVertices());
+		if (leaderSetSize == 0) {
+			return;
+		}
 
-		for (Long leaderID : leaderSet) {
-			newFD.set(leaderID.intValue(), (double) 1.0 / leaderSetSize);
+		/** each local leader gets an equal share of this follower */
+		LongDoubleMessage shareMsg = valueMessage;
+		shareMsg.setSourceVertexId(vertex.getId().get());
+		shareMsg.setValue(1.0 / leaderSetSize);
+		for (LongIterator it = leaderSet.iterator(); it.hasNext();) {
+			targetID.set(it.nextLong());
+			sendMessage(targetID, shareMsg);
+		}
+	}
 
+	/**
+	 * SUPERSTEP rwFinished+3: Sum up the shares of the followers of this vertex.
+	 * Every vertex that received a share is a local leader. Aggregate the
+	 * follower degree and the number of local leaders.
+	 **/
+	private void superstepFD(
+			Vertex<LongWritable, DMIDVertexValue, DoubleWritable> vertex,
+			Iterable<LongDoubleMessage> messages) {
+
+		double followerDegree = 0;
+		for (LongDoubleMessage msg : messages) {
+			followerDegree += msg.getValue();
+		}
+		vertex.getValue().setFollowerDegree(followerDegree);
+
+		if (followerDegree != 0) {
+			aggregate(FD_AGG, new DoubleWritable(followerDegree));
+			aggregate(LOCAL_LEADERS_AGG, new LongWritable(1));
 		}
+	}
+
+	/**
+	 * SUPERSTEP rwFinished+4: A local leader with a higher follower degree than the
+	 * average is a global leader. Add the own ID to the global leaders of this
+	 * compute thread, the worker context adds them to the global leader table.
+	 **/
+	private void superstepGL(
+			Vertex<LongWritable, DMIDVertexValue, DoubleWritable> vertex,
+			Iterable<LongDoubleMessage> messages) {
 
-		aggregate(FD_AGG, newFD);
+		DoubleWritable averageFD = getAggregatedValue(AVERAGE_FD_AGG);
+		if (vertex.getValue().getFollowerDegree() > averageFD.get()) {
+			localLeaders.add(vertex.getId().get());
+		}
 	}
 
 	/**
-	 * SUPERSTEP RW_IT+8: Startpoint and first iteration point of the cascading
-	 * behavior phase.
+	 * SUPERSTEP RW_IT+7: Startpoint and first iteration point of the cascading
+	 * behavior phase. Only the vertices whose successors joined a community
+	 * in the last iteration (the frontier) request the behavior of their
+	 * successors. The others halted, the messages of the frontier wake them.
+	 * After a (re)start the global leaders seed the cascade in superstep9
+	 * instead. The master sets the iteration count back to 1 on a start and a
+	 * cold restart.
 	 **/
 
 	void superstep8(
 			Vertex<LongWritable, DMIDVertexValue, DoubleWritable> vertex,
 			Iterable<LongDoubleMessage> messages) {
 
-		Long vertexID = vertex.getId().get();
-		DoubleWritable profitability = getAggregatedValue(DMIDComputation.PROFITABILITY_AGG);
+		startCascadingStep(vertex);
+		BooleanWritable notAllAssigned = getAggregatedValue(NOT_ALL_ASSIGNED_AGG);
+		if (!notAllAssigned.get()) {
+			/** All vertices are assigned to at least one community */
+			/** TERMINATION */
+			haltCascading(vertex);
+			return;
+		}
+
 		/** Is this vertex a global leader? Global Leader do not change behavior */
-		if (!vertex.getValue().getMembershipDegree().containsKey(vertexID)||profitability.get()<0) {
-			BooleanWritable notAllAssigned = getAggregatedValue(NOT_ALL_ASSIGNED_AGG);
+		if (!isGlobalLeader(vertex)) {
+			LongWritable iterationCounter = getAggregatedValue(ITERATION_AGG);
 			BooleanWritable newMember = getAggregatedValue(NEW_MEMBER_AGG);
-			if (notAllAssigned.get()) {
-				/** There are vertices that are not part of any community */
-
-				if (!newMember.get()) {
-					/**
-					 * There are no changes in the behavior cascade but not all
-					 * vertices are assigned
-					 */
-					/** RESTART */
-					/** set MemDeg back to initial value */
-					initilaizeMemDeg(vertex);
-				}
+			Int2IntOpenHashMap memberCounts = vertex.getValue()
+					.getMemberCounts();
+			/**
+			 * WARM RESTART: no vertex adopted a behavior, the vertices that
+			 * counted members of other communities check them again with the
+			 * lower threshold
+			 */
+			boolean isWarmRestart = !newMember.get() && !memberCounts.isEmpty();
+			if (iterationCounter.get() != 1
+					&& (isInFrontier(messages) || isWarmRestart)) {
 				/** ANOTHER ROUND */
 				/**
-				 * every 0 entry means vertex is not part of this community
-				 * request all successors to send their behavior to these
-				 * specific communities.
+				 * every leader without an entry means vertex is not part of
+				 * this community request all successors to send their
+				 * behavior to these specific communities.
 				 **/
-
-				/** In case of first init test again if vertex is leader */
-				if (!vertex.getValue().getMembershipDegree()
-						.containsKey(vertexID)) {
-					
-					for (Long leaderID : vertex.getValue()
-							.getMembershipDegree().keySet()) {
-						/**
-						 * message of the form (ownID, community ID of interest)
-						 */
-						if(vertex.getValue()
-								.getMembershipDegree().get(leaderID)==0){
-							LongDoubleMessage msg = new LongDoubleMessage(vertexID,
-									leaderID);
-							sendMessageToAllEdges(vertex, msg);
-						}
-
-					}
-				} else {
-					vertex.voteToHalt();
-				}
-			} else {
-
-				/** All vertices are assigned to at least one community */
-				/** TERMINATION */
-				vertex.voteToHalt();
+				memberCounts.clear();
+				sendMembershipRequest(vertex);
 			}
-		} else {
-			vertex.voteToHalt();
 		}
+		endCascadingStep(vertex);
 	}
 
 	/**
-	 * SUPERSTEP RW_IT+9: Second iteration point of the cascading behavior
+	 * SUPERSTEP RW_IT+8: Second iteration point of the cascading behavior
 	 * phase.
 	 **/
 	private void superstep9(
 			Vertex<LongWritable, DMIDVertexValue, DoubleWritable> vertex,
 			Iterable<LongDoubleMessage> messages) {
 
+		startCascadingStep(vertex);
+		LongWritable iterationCounter = getAggregatedValue(ITERATION_AGG);
+		int ownIndex = globalLeaders.indexOf(vertex.getId().get());
+		if (iterationCounter.get() == 2 && ownIndex >= 0) {
+			/**
+			 * (RE)START: nobody requested, the global leaders are the only
+			 * members and wake all their predecessors. These count their
+			 * edges to the leaders in superstep10.
+			 */
+			int[] ownIndices = getLeaderBuffer(1);
+			ownIndices[0] = ownIndex;
+			sendToPredecessors(vertex, ownIndices, 1);
+		}
+
+		Int2DoubleOpenHashMap memDeg = vertex.getValue().getMembershipDegree();
+
 		/**
 		 * iterate over the requests to send this vertex behavior to these
 		 * specific communities
 		 */
 		for (LongDoubleMessage msg : messages) {
 
-			long leaderID = ((long) msg.getValue());
+			int[] requestedLeaders = msg.getLeaderIndices();
+			int[] memberLeaders = getLeaderBuffer(msg.getNumLeaders());
+			int numMember = 0;
 			/**
-			 * send a message back with the same double entry if this vertex is
-			 * part of this specific community
+			 * answer with the requested communities this vertex is part of
 			 */
-			
-			if (vertex.getValue().getMembershipDegree().get(leaderID) != 0.0) {
-				LongDoubleMessage answerMsg = new LongDoubleMessage(vertex
-						.getId().get(), leaderID);
-				sendMessage(new LongWritable(msg.getSourceVertexId()),
-						answerMsg);
+			for (int i = 0; i < msg.getNumLeaders(); ++i) {
+				if (memDeg.get(requestedLeaders[i]) != 0.0) {
+					memberLeaders[numMember++] = requestedLeaders[i];
+				}
+			}
+			if (numMember != 0) {
+				/** superstep10 only counts the leaders, the sender is not sent */
+				LongDoubleMessage answerMsg = replyMessage;
+				answerMsg.setLeaderIndices(memberLeaders, numMember);
+				targetID.set(msg.getSourceVertexId());
+				sendMessage(targetID, answerMsg);
 			}
 		}
+		endCascadingStep(vertex);
 	}
 
 	/**
-	 * SUPERSTEP RW_IT+10: Third iteration point of the cascading behavior
-	 * phase.
+	 * SUPERSTEP RW_IT+9: Third iteration point of the cascading behavior
+	 * phase. The vertex joins every community whose share among its
+	 * successors exceeds the profitability threshold of the DMID variant.
 	 **/
-	abstract void superstep10(
+	void superstep10(
 			Vertex<LongWritable, DMIDVertexValue, DoubleWritable> vertex,
-			Iterable<LongDoubleMessage> messages); 
+			Iterable<LongDoubleMessage> messages) {
+
+		startCascadingStep(vertex);
+		/** Is this vertex a global leader? */
+		if (isGlobalLeader(vertex)) {
+			endCascadingStep(vertex);
+			return;
+		}
+		if (leaderCounts == null) {
+			leaderCounts = new int[globalLeaders.size()];
+			touchedLeaders = new int[globalLeaders.size()];
+		}
+
+		/** counts per communities the number of successors which are member */
+		int numTouched = 0;
+		LongWritable iterationCounter = getAggregatedValue(ITERATION_AGG);
+		if (iterationCounter.get() == 3) {
+			/**
+			 * (RE)START: the global leaders woke this vertex, see superstep9.
+			 * Count every edge to a leader, like the replies to a request sent
+			 * along every edge, so parallel edges count as often as later.
+			 */
+			for (Edge<LongWritable, DoubleWritable> edge : vertex.getEdges()) {
+				int leaderIndex = globalLeaders.indexOf(edge
+						.getTargetVertexId().get());
+				if (leaderIndex < 0) {
+					continue;
+				}
+				if (leaderCounts[leaderIndex] == 0) {
+					touchedLeaders[numTouched++] = leaderIndex;
+				}
+				leaderCounts[leaderIndex]++;
+			}
+		} else {
+			for (LongDoubleMessage msg : messages) {
+				/**
+				 * the msg contains the leader indices of the requested
+				 * communities the sender is a member of. Combined messages
+				 * count the members of several senders.
+				 */
+				int[] memberLeaders = msg.getLeaderIndices();
+				for (int i = 0; i < msg.getNumLeaders(); ++i) {
+					int leaderIndex = memberLeaders[i];
+					if (leaderCounts[leaderIndex] == 0) {
+						touchedLeaders[numTouched++] = leaderIndex;
+					}
+					leaderCounts[leaderIndex] += msg.getLeaderCount(i);
+				}
+			}
+		}
+
+		double threshold = getProfitabilityThreshold(vertex);
+		double newMemDeg = 1.0 / Math.pow(iterationCounter.get() / 3, 2);
+		Int2DoubleOpenHashMap memDeg = vertex.getValue().getMembershipDegree();
+		Int2IntOpenHashMap memberCounts = vertex.getValue().getMemberCounts();
+		boolean wasAssigned = !memDeg.isEmpty();
+		boolean isNewMember = false;
+
+		for (int i = 0; i < numTouched; ++i) {
+			int leaderIndex = touchedLeaders[i];
+			if (((double) leaderCounts[leaderIndex] / vertex.getNumEdges()) > threshold) {
+				/** its profitable to become a member, set value */
+				memDeg.put(leaderIndex, newMemDeg);
+				isNewMember = true;
+			} else if (hasWarmRestarts()) {
+				/** try again on a warm restart, see superstep8 */
+				memberCounts.put(leaderIndex, leaderCounts[leaderIndex]);
+			}
+			/** reset the counter for the next vertex */
+			leaderCounts[leaderIndex] = 0;
+		}
+		if (isNewMember) {
+			if (!wasAssigned) {
+				aggregate(ASSIGNED_AGG, new LongWritable(1));
+			}
+			aggregate(NEW_MEMBER_AGG, new BooleanWritable(true));
+			/**
+			 * The counts of the predecessors changed, add them to the
+			 * frontier of the next iteration
+			 */
+			sendToPredecessors(vertex, touchedLeaders, 0);
+		}
+		endCascadingStep(vertex);
+	}
 
 	/**
-	 * Initialize the MembershipDegree vector.
+	 * SUPERSTEP RW_IT+7 and following in push mode, see PUSH_CASCADING. One
+	 * iteration of the cascading behavior phase per superstep. ITERATION_AGG
+	 * counts the supersteps since the last (re)start, iteration i takes place
+	 * in the superstep with the count i + 1.
 	 **/
-	private void initilaizeMemDeg(
-			Vertex<LongWritable, DMIDVertexValue, DoubleWritable> vertex) {
+	private void superstepPush(
+			Vertex<LongWritable, DMIDVertexValue, DoubleWritable> vertex,
+			Iterable<LongDoubleMessage> messages) {
+
+		startCascadingStep(vertex);
+		LongWritable iterationCounter = getAggregatedValue(ITERATION_AGG);
+		DMIDVertexValue vertexValue = vertex.getValue();
+
+		if (iterationCounter.get() == 1) {
+			/** (RE)START: the global leaders are member of their community */
+			int leaderIndex = globalLeaders.indexOf(vertex.getId().get());
+			if (leaderIndex >= 0) {
+				int[] ownIndex = getLeaderBuffer(1);
+				ownIndex[0] = leaderIndex;
+				sendToPredecessors(vertex, ownIndex, 1);
+			}
+			endCascadingStep(vertex);
+			return;
+		}
+
+		BooleanWritable notAllAssigned = getAggregatedValue(NOT_ALL_ASSIGNED_AGG);
+		BooleanWritable newMember = getAggregatedValue(NEW_MEMBER_AGG);
+		if (iterationCounter.get() > 2 && !notAllAssigned.get()) {
+			/** All vertices are assigned to at least one community */
+			/** TERMINATION */
+			haltCascading(vertex);
+			return;
+		}
+		/**
+		 * WARM RESTART: the master lowered the threshold, check all counted
+		 * communities again
+		 */
+		boolean isWarmRestart = iterationCounter.get() > 2
+				&& !newMember.get();
+		/** Global leaders do not change behavior */
+		if (isGlobalLeader(vertex)) {
+			endCascadingStep(vertex);
+			return;
+		}
 
-		DoubleSparseVector vecGL = getAggregatedValue(GL_AGG);
-		HashMap<Long, Double> newMemDeg = new HashMap<Long, Double>();
+		Int2DoubleOpenHashMap memDeg = vertexValue.getMembershipDegree();
+		Int2IntOpenHashMap memberCounts = vertexValue.getMemberCounts();
+		boolean wasAssigned = !memDeg.isEmpty();
+		double threshold = getProfitabilityThreshold(vertex);
+		double newMemDeg = 1.0 / Math.pow(iterationCounter.get() - 1, 2);
 
-		for (long i = 0; i < getTotalNumVertices(); ++i) {
-			/** only global leader have entries 1.0 the rest will return 0*/
-			if(vecGL.get((int) i)!=0){
-				/** is entry i a global leader?*/
-				if(i == vertex.getId().get()){
-					/**
-					 * This vertex is a global leader. Set Membership degree to
-					 * 100%
-					 */
-					newMemDeg.put(new Long(i), new Double(1.0));
+		int[] joinedLeaders = getLeaderBuffer(globalLeaders.size());
+		int numJoined = 0;
 
+		for (LongDoubleMessage msg : messages) {
+			/**
+			 * the msg contains the communities successors joined in the last
+			 * iteration, combined messages with a count per community
+			 */
+			int[] memberLeaders = msg.getLeaderIndices();
+			for (int i = 0; i < msg.getNumLeaders(); ++i) {
+				int leaderIndex = memberLeaders[i];
+				if (memDeg.containsKey(leaderIndex)) {
+					continue;
+				}
+				int count = memberCounts.addTo(leaderIndex,
+						msg.getLeaderCount(i)) + msg.getLeaderCount(i);
+				if (((double) count / vertex.getNumEdges()) > threshold) {
+					/** its profitable to become a member, set value */
+					memDeg.put(leaderIndex, newMemDeg);
+					memberCounts.remove(leaderIndex);
+					joinedLeaders[numJoined++] = leaderIndex;
 				}
-				else{
-					newMemDeg.put(new Long(i), new Double(0.0));
+			}
+		}
+		if (isWarmRestart) {
+			for (Int2IntMap.Entry entry : memberCounts.int2IntEntrySet()) {
+				if (((double) entry.getIntValue() / vertex.getNumEdges()) > threshold) {
+					memDeg.put(entry.getIntKey(), newMemDeg);
+					joinedLeaders[numJoined++] = entry.getIntKey();
+				}
+			}
+			for (int i = 0; i < numJoined; ++i) {
+				memberCounts.remove(joinedLeaders[i]);
+			}
+		}
+
+		if (numJoined != 0) {
+			if (!wasAssigned) {
+				aggregate(ASSIGNED_AGG, new LongWritable(1));
+			}
+			aggregate(NEW_MEMBER_AGG, new BooleanWritable(true));
+			Arrays.sort(joinedLeaders, 0, numJoined);
+			sendToPredecessors(vertex, joinedLeaders, numJoined);
+		}
+		endCascadingStep(vertex);
+	}
+
+	/**
+	 * SUPERSTEP RW_IT+7 and following in speculative mode, see
+	 * SPECULATIVE_THRESHOLDS. The push protocol with one lane per threshold,
+	 * lane l tries the threshold after l more restarts than lane 0. A
+	 * membership of lane l is stored under the key l * L + leader index, L
+	 * the number of global leaders, so the messages and the combiner stay
+	 * the same.
+	 **/
+	private void superstepSpeculative(
+			Vertex<LongWritable, DMIDVertexValue, DoubleWritable> vertex,
+			Iterable<LongDoubleMessage> messages) {
+
+		LongWritable iterationCounter = getAggregatedValue(ITERATION_AGG);
+		LongWritable selectedLane = getAggregatedValue(SELECTED_LANE_AGG);
+		DMIDVertexValue vertexValue = vertex.getValue();
+		int numLanes = SPECULATIVE_THRESHOLDS.get(getConf());
+		int numLeaders = globalLeaders.size();
+
+		if (selectedLane.get() >= 0) {
+			/** TERMINATION: keep the memberships of the selected lane */
+			selectLane(vertexValue, (int) selectedLane.get(), numLeaders);
+			haltCascading(vertex);
+			return;
+		}
 
+		if (iterationCounter.get() == 1) {
+			/** (RE)START: the global leaders are member in every lane */
+			Int2DoubleOpenHashMap memDeg = DMIDVertexValue
+					.newMembershipDegree();
+			vertexValue.setMemberCounts(new Int2IntOpenHashMap(0));
+
+			int leaderIndex = globalLeaders.indexOf(vertex.getId().get());
+			if (leaderIndex >= 0) {
+				int[] ownKeys = getLeaderBuffer(numLanes);
+				for (int lane = 0; lane < numLanes; ++lane) {
+					ownKeys[lane] = lane * numLeaders + leaderIndex;
+					memDeg.put(ownKeys[lane], 1.0);
 				}
-				
+				sendToPredecessors(vertex, ownKeys, numLanes);
 			}
+			vertexValue.setMembershipDegree(memDeg);
+			return;
 		}
-		/** is entry i a global leader? */
-		if (vecGL.get((int) vertex.getId().get())!=0 ) {
+
+		/** Global leaders do not change behavior */
+		if (isGlobalLeader(vertex)) {
+			return;
+		}
+
+		LongWritable finishedLanes = getAggregatedValue(FINISHED_LANES_AGG);
+		LongWritable restartCounter = getAggregatedValue(DMIDMasterCompute.RESTART_COUNTER_AGG);
+		Int2DoubleOpenHashMap memDeg = vertexValue.getMembershipDegree();
+		Int2IntOpenHashMap memberCounts = vertexValue.getMemberCounts();
+		double newMemDeg = 1.0 / Math.pow(iterationCounter.get() - 1, 2);
+
+		int[] joinedKeys = getLeaderBuffer(numLanes * numLeaders);
+		int numJoined = 0;
+		long newMemberLanes = 0;
+
+		for (LongDoubleMessage msg : messages) {
 			/**
-			 * This vertex is a global leader. Set Membership degree to
-			 * 100%
+			 * the msg contains the keys successors joined in the last
+			 * iteration, combined messages with a count per key
 			 */
-			newMemDeg.put(new Long(vertex.getId().get()), new Double(1.0));
+			int[] memberKeys = msg.getLeaderIndices();
+			for (int i = 0; i < msg.getNumLeaders(); ++i) {
+				int key = memberKeys[i];
+				int lane = key / numLeaders;
+				/** a finished lane keeps its memberships */
+				if ((finishedLanes.get() & (1L << lane)) != 0
+						|| memDeg.containsKey(key)) {
+					continue;
+				}
+				int count = memberCounts.addTo(key, msg.getLeaderCount(i))
+						+ msg.getLeaderCount(i);
+				double threshold = getProfitabilityThreshold(vertex,
+						restartCounter.get() + lane);
+				if (((double) count / vertex.getNumEdges()) > threshold) {
+					/** its profitable to become a member, set value */
+					memDeg.put(key, newMemDeg);
+					memberCounts.remove(key);
+					joinedKeys[numJoined++] = key;
+					newMemberLanes |= 1L << lane;
+				}
+			}
+		}
+
+		if (numJoined != 0) {
+			aggregate(NEW_MEMBER_LANES_AGG, new LongWritable(newMemberLanes));
+			Arrays.sort(joinedKeys, 0, numJoined);
+			sendToPredecessors(vertex, joinedKeys, numJoined);
+		}
+
+		long assignedLanes = 0;
+		IntIterator keyIter = memDeg.keySet().iterator();
+		while (keyIter.hasNext()) {
+			assignedLanes |= 1L << (keyIter.nextInt() / numLeaders);
 		}
-		
+		long notAssignedLanes = ~assignedLanes & ~finishedLanes.get()
+				& ((1L << numLanes) - 1);
+		if (notAssignedLanes != 0) {
+			aggregate(NOT_ALL_ASSIGNED_LANES_AGG, new LongWritable(
+					notAssignedLanes));
+		}
+	}
+
+	/**
+	 * Replaces the memberships of all lanes by the ones of the given lane,
+	 * stored under the leader index.
+	 **/
+	private void selectLane(DMIDVertexValue vertexValue, int lane,
+			int numLeaders) {
+		Int2DoubleOpenHashMap newMemDeg = DMIDVertexValue.newMembershipDegree();
+		for (Int2DoubleMap.Entry entry : vertexValue.getMembershipDegree()
+				.int2DoubleEntrySet()) {
+			if (entry.getIntKey() / numLeaders == lane) {
+				newMemDeg.put(entry.getIntKey() - lane * numLeaders,
+						entry.getDoubleValue());
+			}
+		}
+		vertexValue.setMembershipDegree(newMemDeg);
+		vertexValue.setMemberCounts(new Int2IntOpenHashMap(0));
+	}
+
+	/**
+	 * Profitability threshold of the cascading behavior phase. A vertex joins
+	 * a community if the fraction of its successors that are members of the
+	 * community exceeds this threshold.
+	 **/
+	abstract double getProfitabilityThreshold(
+			Vertex<LongWritable, DMIDVertexValue, DoubleWritable> vertex);
+
+	/**
+	 * Profitability threshold of the vertex after restartCount - 1 restarts,
+	 * see RESTART_COUNTER_AGG. Used by the speculative mode, which tries the
+	 * thresholds of several restarts at once. The uniform threshold of the
+	 * basic DMID by default.
+	 **/
+	double getProfitabilityThreshold(
+			Vertex<LongWritable, DMIDVertexValue, DoubleWritable> vertex,
+			long restartCount) {
+		return DMIDMasterCompute.getProfitabilityThreshold(restartCount);
+	}
+
+	/**
+	 * Has a successor joined a community in the last iteration? Then it sent
+	 * a message in superstep10. Otherwise the successors would send the same
+	 * replies as in the last request of this vertex, which did not reach the
+	 * threshold. The threshold only changes on a restart, so the vertex can
+	 * skip the request.
+	 **/
+	boolean isInFrontier(Iterable<LongDoubleMessage> messages) {
+		return messages.iterator().hasNext();
+	}
+
+	/**
+	 * Starts a step of the cascading behavior phase. A halted vertex misses
+	 * the restarts of the master, so it compares the restart counter with
+	 * the one of its last step. At the start of the phase and after a cold
+	 * restart it first goes back to the initial memberships.
+	 **/
+	void startCascadingStep(
+			Vertex<LongWritable, DMIDVertexValue, DoubleWritable> vertex) {
+		LongWritable restartCounter = getAggregatedValue(DMIDMasterCompute.RESTART_COUNTER_AGG);
+		DMIDVertexValue vertexValue = vertex.getValue();
+		if (vertexValue.getRestartEpoch() == restartCounter.get()) {
+			return;
+		}
+		if (vertexValue.getRestartEpoch() < 0 || !hasWarmRestarts()) {
+			initilaizeMemDeg(vertex);
+			vertexValue.setMemberCounts(new Int2IntOpenHashMap(0));
+		}
+		vertexValue.setRestartEpoch(restartCounter.get());
+	}
+
+	/**
+	 * Ends a step of the cascading behavior phase. The vertex halts unless
+	 * it has to run in the next superstep without messages.
+	 **/
+	void endCascadingStep(
+			Vertex<LongWritable, DMIDVertexValue, DoubleWritable> vertex) {
+		if (!staysActive(vertex)) {
+			haltCascading(vertex);
+		} else {
+			/**
+			 * The job may end at the superstep limit before this vertex halts,
+			 * keep the memberships for the output format current anyway.
+			 */
+			vertex.getValue().setMemberLeaderIDs(globalLeaders);
+		}
+	}
+
+	/**
+	 * Does the vertex have to run in the next superstep without messages? The
+	 * global leaders seed the cascade after a restart, the master cannot
+	 * wake the other vertices. With warm restarts the vertices that counted
+	 * members of other communities check them again after a restart.
+	 **/
+	boolean staysActive(
+			Vertex<LongWritable, DMIDVertexValue, DoubleWritable> vertex) {
+		return isGlobalLeader(vertex)
+				|| (hasWarmRestarts() && !vertex.getValue().getMemberCounts()
+						.isEmpty());
+	}
+
+	/** Does a restart keep the memberships? See WARM_RESTART */
+	boolean hasWarmRestarts() {
+		return WARM_RESTART.get(getConf());
+	}
+
+	/**
+	 * Votes to halt in the cascading behavior phase. The vertex may not run
+	 * again, so it saves its memberships with the leader IDs for the output
+	 * format first.
+	 **/
+	void haltCascading(
+			Vertex<LongWritable, DMIDVertexValue, DoubleWritable> vertex) {
+		vertex.getValue().setMemberLeaderIDs(globalLeaders);
+		vertex.voteToHalt();
+	}
+
+	/**
+	 * Initialize the MembershipDegree vector. Only global leaders are member of
+	 * a community, their own one.
+	 **/
+	void initilaizeMemDeg(
+			Vertex<LongWritable, DMIDVertexValue, DoubleWritable> vertex) {
+
+		Int2DoubleOpenHashMap newMemDeg = DMIDVertexValue.newMembershipDegree();
+
+		int leaderIndex = globalLeaders.indexOf(vertex.getId().get());
+		if (leaderIndex >= 0) {
+			/**
+			 * This vertex is a global leader. Set Membership degree to 100%
+			 */
+			newMemDeg.put(leaderIndex, 1.0);
+		}
+
 		vertex.getValue().setMembershipDegree(newMemDeg);
 	}
+
+	/**
+	 * Is this vertex a global leader whose membership degree is initialized?
+	 **/
+	boolean isGlobalLeader(
+			Vertex<LongWritable, DMIDVertexValue, DoubleWritable> vertex) {
+		int leaderIndex = globalLeaders.indexOf(vertex.getId().get());
+		return leaderIndex >= 0
+				&& vertex.getValue().getMembershipDegree()
+						.containsKey(leaderIndex);
+	}
+
+	/**
+	 * Requests the memberships of the successors in every community this
+	 * vertex is not member of.
+	 **/
+	void sendMembershipRequest(
+			Vertex<LongWritable, DMIDVertexValue, DoubleWritable> vertex) {
+		Int2DoubleOpenHashMap memDeg = vertex.getValue().getMembershipDegree();
+		int[] requestedLeaders = getLeaderBuffer(globalLeaders.size()
+				- memDeg.size());
+		int numRequested = 0;
+
+		for (int leaderIndex = 0; leaderIndex < globalLeaders.size(); ++leaderIndex) {
+			if (!memDeg.containsKey(leaderIndex)) {
+				requestedLeaders[numRequested++] = leaderIndex;
+			}
+		}
+		if (numRequested != 0) {
+			/** one message of the form (ownID, community indices of interest) */
+			sendMembershipRequest(vertex, requestedLeaders, numRequested);
+		}
+	}
+
+	/**
+	 * Sends one message of the form (ownID, requested community indices)
+	 * along all outgoing edges.
+	 **/
+	void sendMembershipRequest(
+			Vertex<LongWritable, DMIDVertexValue, DoubleWritable> vertex,
+			int[] requestedLeaders, int numRequested) {
+		LongDoubleMessage msg = requestMessage;
+		msg.setSourceVertexId(vertex.getId().get());
+		msg.setLeaderIndices(requestedLeaders, numRequested);
+		sendMessageToAllEdges(vertex, msg);
+	}
+
+	/**
+	 * Sends the leader indices in ascending order to all predecessors, the
+	 * vertices that count this vertex as a successor.
+	 **/
+	private void sendToPredecessors(
+			Vertex<LongWritable, DMIDVertexValue, DoubleWritable> vertex,
+			int[] leaderIndices, int numLeaders) {
+		LongDoubleMessage msg = replyMessage;
+		msg.setLeaderIndices(leaderIndices, numLeaders);
+		for (long predecessorID : vertex.getValue().getPredecessors()) {
+			targetID.set(predecessorID);
+			sendMessage(targetID, msg);
+		}
+	}
+
+	/**
+	 * Leader index array of this compute thread with at least the given
+	 * capacity. The content is only valid until the next call.
+	 **/
+	int[] getLeaderBuffer(int capacity) {
+		if (leaderBuffer.length < capacity) {
+			leaderBuffer = new int[Math.max(capacity, 2 * leaderBuffer.length)];
+		}
+		return leaderBuffer;
+	}
 }
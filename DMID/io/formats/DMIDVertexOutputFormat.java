@@ -10,9 +10,7 @@ import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.json.JSONArray;
 
-
 import java.io.IOException;
-import java.util.Map;
 
 /**
  * VertexOutputFormat that supports JSON encoded vertices featuring
@@ -50,19 +48,19 @@ public class DMIDVertexOutputFormat extends
         
         DMIDVertexValue vertexValue = vertex.getValue();
         JSONArray jsonMemDegArray = new JSONArray();
-        for(Map.Entry<Long, Double> entry : vertexValue.getMembershipDegree().entrySet()){
-        	if(entry.getValue()!=0){
-        		JSONArray jsonDegreeEntry = new JSONArray();
-            	jsonDegreeEntry.put(entry.getKey());
-            	jsonDegreeEntry.put(entry.getValue());
-            	jsonMemDegArray.put(jsonDegreeEntry);
-        	}
-        	
+        /** the vertex translated its leader indices in its last cascading step */
+        long[] leaderIDs = vertexValue.getMemberLeaderIDs();
+        double[] memDegrees = vertexValue.getMemberDegrees();
+        for(int i = 0; i < leaderIDs.length; ++i){
+        	JSONArray jsonDegreeEntry = new JSONArray();
+        	jsonDegreeEntry.put(leaderIDs[i]);
+        	jsonDegreeEntry.put(memDegrees[i]);
+        	jsonMemDegArray.put(jsonDegreeEntry);
         }
         jsonVertex.put(jsonMemDegArray);
       } catch (Exception e) {
         throw new IllegalArgumentException(
-          "writeVertex: Couldn't write vertex " + vertex);
+          "writeVertex: Couldn't write vertex " + vertex, e);
       }
       return new Text(jsonVertex.toString());
     }
@@ -0,0 +1,123 @@
+package org.apache.giraph.examples;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.giraph.conf.GiraphConfiguration;
+import org.apache.giraph.examples.io.formats.DMIDVertexInputFormat;
+import org.apache.giraph.examples.io.formats.DMIDVertexOutputFormat;
+import org.apache.giraph.examples.utils.DMIDMasterCompute;
+import org.apache.giraph.examples.utils.DMIDOutEdges;
+import org.apache.giraph.examples.utils.DMIDWorkerContext;
+import org.apache.giraph.utils.InternalVertexRunner;
+import org.json.JSONArray;
+import org.junit.Test;
+
+/**
+ * Runs DMID on a small graph and checks that the modes of the cascading
+ * behavior phase find the same cover as the default pull run.
+ */
+public class DMIDComputationTest {
+
+	/**
+	 * Two cliques 0-4 and 5-9 joined by the edge 4-5, vertex 10 between
+	 * them and vertex 11 between 0 and 10. Every edge is stored in both
+	 * directions with the same weight.
+	 */
+	private static final String[] GRAPH = new String[] {
+			"[0,[[1,1],[2,1],[3,1],[4,1],[11,1]]]",
+			"[1,[[0,1],[2,1],[3,1],[4,1]]]",
+			"[2,[[0,1],[1,1],[3,1],[4,1]]]",
+			"[3,[[0,1],[1,1],[2,1],[4,1]]]",
+			"[4,[[0,1],[1,1],[2,1],[3,1],[5,1],[10,2]]]",
+			"[5,[[4,1],[6,1],[7,1],[8,1],[9,1],[10,2]]]",
+			"[6,[[5,1],[7,1],[8,1],[9,1]]]",
+			"[7,[[5,1],[6,1],[8,1],[9,1]]]",
+			"[8,[[5,1],[6,1],[7,1],[9,1]]]",
+			"[9,[[5,1],[6,1],[7,1],[8,1]]]",
+			"[10,[[4,2],[5,2],[11,1]]]",
+			"[11,[[0,1],[10,1]]]" };
+
+	/** Configuration of a DMID run with the given computation class */
+	private static GiraphConfiguration createConf(
+			Class<? extends DMIDComputation> computationClass) {
+		GiraphConfiguration conf = new GiraphConfiguration();
+		conf.setComputationClass(computationClass);
+		conf.setMasterComputeClass(DMIDMasterCompute.class);
+		conf.setWorkerContextClass(DMIDWorkerContext.class);
+		conf.setVertexInputFormatClass(DMIDVertexInputFormat.class);
+		conf.setVertexOutputFormatClass(DMIDVertexOutputFormat.class);
+		conf.setOutEdgesClass(DMIDOutEdges.class);
+		return conf;
+	}
+
+	/**
+	 * Runs DMID and parses the output.
+	 *
+	 * @return the membership degrees by leader ID of every vertex
+	 */
+	private static Map<Long, Map<Long, Double>> runCover(
+			GiraphConfiguration conf) throws Exception {
+		Map<Long, Map<Long, Double>> cover = new HashMap<Long, Map<Long, Double>>();
+		for (String line : InternalVertexRunner.run(conf, GRAPH)) {
+			JSONArray jsonVertex = new JSONArray(line);
+			JSONArray jsonMemDegArray = jsonVertex.getJSONArray(1);
+			Map<Long, Double> memDeg = new HashMap<Long, Double>();
+			for (int i = 0; i < jsonMemDegArray.length(); ++i) {
+				JSONArray jsonDegreeEntry = jsonMemDegArray.getJSONArray(i);
+				memDeg.put(jsonDegreeEntry.getLong(0),
+						jsonDegreeEntry.getDouble(1));
+			}
+			cover.put(jsonVertex.getLong(0), memDeg);
+		}
+		return cover;
+	}
+
+	/** Asserts the same communities with the same membership degrees */
+	private static void assertSameCover(Map<Long, Map<Long, Double>> expected,
+			Map<Long, Map<Long, Double>> actual) {
+		assertEquals(GRAPH.length, expected.size());
+		assertEquals(expected.keySet(), actual.keySet());
+		for (Map.Entry<Long, Map<Long, Double>> vertex : expected.entrySet()) {
+			Map<Long, Double> memDeg = actual.get(vertex.getKey());
+			assertEquals("communities of vertex " + vertex.getKey(), vertex
+					.getValue().keySet(), memDeg.keySet());
+			for (Map.Entry<Long, Double> entry : vertex.getValue().entrySet()) {
+				assertEquals(entry.getValue(), memDeg.get(entry.getKey()), 1e-9);
+			}
+		}
+	}
+
+	@Test
+	public void testPushCascading() throws Exception {
+		Map<Long, Map<Long, Double>> pullCover = runCover(createConf(
+				BasicDMIDComputation.class));
+
+		GiraphConfiguration conf = createConf(BasicDMIDComputation.class);
+		DMIDComputation.PUSH_CASCADING.set(conf, true);
+		assertSameCover(pullCover, runCover(conf));
+	}
+
+	@Test
+	public void testSpeculativeThresholds() throws Exception {
+		Map<Long, Map<Long, Double>> pullCover = runCover(createConf(
+				BasicDMIDComputation.class));
+
+		GiraphConfiguration conf = createConf(BasicDMIDComputation.class);
+		DMIDComputation.SPECULATIVE_THRESHOLDS.set(conf, 3);
+		assertSameCover(pullCover, runCover(conf));
+	}
+
+	/** GRAPH stores every edge in both directions */
+	@Test
+	public void testUndirected() throws Exception {
+		Map<Long, Map<Long, Double>> pullCover = runCover(createConf(
+				BasicDMIDComputation.class));
+
+		GiraphConfiguration conf = createConf(BasicDMIDComputation.class);
+		DMIDComputation.UNDIRECTED.set(conf, true);
+		assertSameCover(pullCover, runCover(conf));
+	}
+}
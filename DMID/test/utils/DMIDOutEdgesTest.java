@@ -0,0 +1,86 @@
+package org.apache.giraph.examples.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.apache.giraph.edge.Edge;
+import org.apache.giraph.edge.EdgeFactory;
+import org.apache.giraph.utils.WritableUtils;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.junit.Test;
+
+/**
+ * Tests of {@link DMIDOutEdges}.
+ */
+public class DMIDOutEdgesTest {
+
+	/** Out-edges to the given targets, weight w + 0.5 for target w */
+	private static DMIDOutEdges createEdges(long... targetIDs) {
+		DMIDOutEdges edges = new DMIDOutEdges();
+		edges.initialize(1);
+		for (long targetID : targetIDs) {
+			edges.add(EdgeFactory.create(new LongWritable(targetID),
+					new DoubleWritable(targetID + 0.5)));
+		}
+		return edges;
+	}
+
+	/** Target IDs in iteration order */
+	private static long[] targetIDs(DMIDOutEdges edges) {
+		long[] ids = new long[edges.size()];
+		int i = 0;
+		for (Edge<LongWritable, DoubleWritable> edge : edges) {
+			ids[i++] = edge.getTargetVertexId().get();
+		}
+		return ids;
+	}
+
+	@Test
+	public void testLookupOutOfOrder() {
+		DMIDOutEdges edges = createEdges(40, 3, 1L << 35, 7);
+		assertEquals(4, edges.size());
+		assertEquals(3.5, edges.getEdgeValue(new LongWritable(3)).get(), 0);
+		assertEquals(40.5, edges.getEdgeValue(new LongWritable(40)).get(), 0);
+		assertEquals((1L << 35) + 0.5,
+				edges.getEdgeValue(new LongWritable(1L << 35)).get(), 0);
+		assertNull(edges.getEdgeValue(new LongWritable(8)));
+		/** the lookup sorted the edges */
+		assertArrayEquals(new long[] { 3, 7, 40, 1L << 35 }, targetIDs(edges));
+	}
+
+	@Test
+	public void testSetAndRemove() {
+		DMIDOutEdges edges = createEdges(5, 2, 9, 2);
+		edges.setEdgeValue(new LongWritable(9), new DoubleWritable(1));
+		assertEquals(1, edges.getEdgeValue(new LongWritable(9)).get(), 0);
+
+		/** removes both parallel edges */
+		edges.remove(new LongWritable(2));
+		assertArrayEquals(new long[] { 5, 9 }, targetIDs(edges));
+		assertNull(edges.getEdgeValue(new LongWritable(2)));
+		assertEquals(5.5, edges.getEdgeValue(new LongWritable(5)).get(), 0);
+	}
+
+	@Test
+	public void testRoundTrip() {
+		DMIDOutEdges edges = createEdges(12, -3, 300);
+		byte[] bytes = WritableUtils.writeToByteArray(edges);
+		/** size, the deltas -3, 15, 288 and three weights */
+		assertEquals(1 + 1 + 1 + 3 + 3 * 8, bytes.length);
+
+		DMIDOutEdges read = createEdges(1, 2, 3, 4, 5);
+		WritableUtils.readFieldsFromByteArray(bytes, read);
+		assertArrayEquals(new long[] { -3, 12, 300 }, targetIDs(read));
+		assertEquals(12.5, read.getEdgeValue(new LongWritable(12)).get(), 0);
+	}
+
+	@Test
+	public void testInitializeFromEdges() {
+		DMIDOutEdges edges = new DMIDOutEdges();
+		edges.initialize(createEdges(6, 1));
+		assertEquals(2, edges.size());
+		assertEquals(6.5, edges.getEdgeValue(new LongWritable(6)).get(), 0);
+	}
+}
@@ -0,0 +1,154 @@
+package org.apache.giraph.examples.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.apache.giraph.utils.UnsafeByteArrayInputStream;
+import org.apache.giraph.utils.UnsafeByteArrayOutputStream;
+import org.apache.giraph.utils.WritableUtils;
+import org.junit.Test;
+
+/**
+ * Round trips of {@link DMIDVertexValue}, in the current layout and from the
+ * layout of the oldest versions.
+ */
+public class DMIDVertexValueTest {
+
+	/** Writes the value and reads it into a default value */
+	private static DMIDVertexValue roundTrip(DMIDVertexValue value) {
+		DMIDVertexValue read = new DMIDVertexValue();
+		WritableUtils.readFieldsFromByteArray(
+				WritableUtils.writeToByteArray(value), read);
+		return read;
+	}
+
+	@Test
+	public void testDefaultRoundTrip() {
+		DMIDVertexValue read = roundTrip(new DMIDVertexValue());
+		assertEquals(DMIDVertexValue.INVALID_DEGREE, read.getWeightedInDegree());
+		assertTrue(read.getMembershipDegree().isEmpty());
+		assertEquals(0, read.getDisColIDs().length);
+		assertEquals(0, read.getPredecessors().length);
+		assertNull(read.getBestValidMemDeg());
+		assertEquals(0, read.getMemberLeaderIDs().length);
+		assertEquals(-1, read.getRestartEpoch());
+	}
+
+	@Test
+	public void testRoundTrip() {
+		Int2DoubleOpenHashMap memDeg = DMIDVertexValue.newMembershipDegree();
+		memDeg.put(0, 0.25);
+		memDeg.put(2, 1.0);
+		DMIDVertexValue value = new DMIDVertexValue(3.5, memDeg, new long[] {
+				-4, 7, 1L << 40 }, new double[] { 0.1, 0.2, 0.3 });
+		value.setDAEntry(0.125);
+		value.setPredecessors(new long[] { 9, 1 }, new double[] { 2, 1 }, 2);
+		value.setFollowerDegree(4);
+		value.setLeadership(0.75);
+		Int2IntOpenHashMap memberCounts = new Int2IntOpenHashMap();
+		memberCounts.put(1, 3);
+		value.setMemberCounts(memberCounts);
+		Int2DoubleOpenHashMap bestValid = DMIDVertexValue
+				.newMembershipDegree();
+		bestValid.put(1, 0.5);
+		value.setBestValidMemDeg(bestValid);
+		value.setMemberLeaderIDs(new GlobalLeaderTable(new long[] { 30, 40,
+				50 }));
+		value.setRestartEpoch(2);
+
+		DMIDVertexValue read = roundTrip(value);
+		assertEquals(3.5, read.getWeightedInDegree(), 0);
+		assertEquals(memDeg, read.getMembershipDegree());
+		assertArrayEquals(new long[] { -4, 7, 1L << 40 }, read.getDisColIDs());
+		assertArrayEquals(new double[] { 0.1, 0.2, 0.3 },
+				read.getDisColValues(), 0);
+		assertEquals(0.125, read.getDAEntry(), 0);
+		assertArrayEquals(new long[] { 1, 9 }, read.getPredecessors());
+		assertEquals(2, read.getPredecessorWeight(9), 0);
+		assertEquals(4, read.getFollowerDegree(), 0);
+		assertEquals(0.75, read.getLeadership(), 0);
+		assertEquals(memberCounts, read.getMemberCounts());
+		assertEquals(bestValid, read.getBestValidMemDeg());
+		assertArrayEquals(new long[] { 30, 50 }, read.getMemberLeaderIDs());
+		assertArrayEquals(new double[] { 0.25, 1.0 }, read.getMemberDegrees(),
+				0);
+		assertEquals(2, read.getRestartEpoch());
+	}
+
+	/**
+	 * Giraph moves vertices in its unsafe streams, which write in native byte
+	 * order.
+	 */
+	@Test
+	public void testUnsafeRoundTrip() throws IOException {
+		DMIDVertexValue value = new DMIDVertexValue(1.5,
+				DMIDVertexValue.newMembershipDegree(), new long[] { 3 },
+				new double[] { 0.5 });
+		value.getMembershipDegree().put(4, 0.25);
+		UnsafeByteArrayOutputStream output = new UnsafeByteArrayOutputStream();
+		value.write(output);
+
+		DMIDVertexValue read = new DMIDVertexValue();
+		read.readFields(new UnsafeByteArrayInputStream(output.getByteArray(),
+				0, output.getPos()));
+		assertEquals(1.5, read.getWeightedInDegree(), 0);
+		assertEquals(value.getMembershipDegree(), read.getMembershipDegree());
+		assertArrayEquals(new long[] { 3 }, read.getDisColIDs());
+	}
+
+	/**
+	 * The oldest versions wrote the membership map with leader IDs as keys
+	 * and a dense disCol.
+	 */
+	@Test
+	public void testOldestLayout() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(bytes);
+		output.writeDouble(2);
+		output.writeInt(2);
+		output.writeLong(1L << 33);
+		output.writeDouble(0.5);
+		output.writeLong(6);
+		output.writeDouble(1);
+		output.writeLong(4);
+		output.writeDouble(0);
+		output.writeDouble(0.25);
+		output.writeDouble(0);
+		output.writeDouble(-0.5);
+
+		DMIDVertexValue read = new DMIDVertexValue();
+		WritableUtils.readFieldsFromByteArray(bytes.toByteArray(), read);
+		assertEquals(2, read.getWeightedInDegree(), 0);
+		assertTrue(read.getMembershipDegree().isEmpty());
+		assertArrayEquals(new long[] { 6, 1L << 33 },
+				read.getMemberLeaderIDs());
+		assertArrayEquals(new double[] { 1, 0.5 }, read.getMemberDegrees(), 0);
+		assertArrayEquals(new long[] { 1, 3 }, read.getDisColIDs());
+		assertArrayEquals(new double[] { 0.25, -0.5 },
+				read.getDisColValues(), 0);
+		assertEquals(0, read.getPredecessors().length);
+		assertNull(read.getBestValidMemDeg());
+		assertEquals(-1, read.getRestartEpoch());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testUnknownLayout() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(bytes);
+		output.writeDouble(2);
+		output.writeInt(-3);
+
+		/** readFieldsFromByteArray wraps the IOException */
+		WritableUtils.readFieldsFromByteArray(bytes.toByteArray(),
+				new DMIDVertexValue());
+	}
+}
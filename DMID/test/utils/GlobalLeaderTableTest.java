@@ -0,0 +1,77 @@
+package org.apache.giraph.examples.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.apache.giraph.utils.WritableUtils;
+import org.junit.Test;
+
+/**
+ * Round trip and union of {@link GlobalLeaderTable}.
+ */
+public class GlobalLeaderTableTest {
+
+	/** All leader IDs of the table */
+	private static long[] leaderIDs(GlobalLeaderTable table) {
+		long[] ids = new long[table.size()];
+		for (int i = 0; i < ids.length; ++i) {
+			ids[i] = table.getLeaderID(i);
+		}
+		return ids;
+	}
+
+	@Test
+	public void testRoundTrip() {
+		long[] ids = { -5, 0, 3, 130, Long.MAX_VALUE };
+		byte[] bytes = WritableUtils.writeToByteArray(new GlobalLeaderTable(
+				ids));
+		/** count, then the deltas -5, 5, 3, 127 and a 9 byte one */
+		assertEquals(1 + 1 + 1 + 1 + 1 + 9, bytes.length);
+
+		GlobalLeaderTable read = new GlobalLeaderTable(new long[] { 7 });
+		WritableUtils.readFieldsFromByteArray(bytes, read);
+		assertArrayEquals(ids, leaderIDs(read));
+	}
+
+	@Test
+	public void testEmptyRoundTrip() {
+		byte[] bytes = WritableUtils.writeToByteArray(new GlobalLeaderTable());
+		assertEquals(1, bytes.length);
+
+		GlobalLeaderTable read = new GlobalLeaderTable(new long[] { 7 });
+		WritableUtils.readFieldsFromByteArray(bytes, read);
+		assertEquals(0, read.size());
+	}
+
+	@Test
+	public void testIndexOf() {
+		GlobalLeaderTable table = new GlobalLeaderTable(new long[] { 2, 9, 40 });
+		assertEquals(0, table.indexOf(2));
+		assertEquals(2, table.indexOf(40));
+		assertEquals(-1, table.indexOf(1));
+		assertEquals(-1, table.indexOf(10));
+		assertEquals(-1, table.indexOf(41));
+	}
+
+	@Test
+	public void testUnion() {
+		GlobalLeaderTable table = new GlobalLeaderTable(new long[] { 1, 5, 9 });
+		table.union(new GlobalLeaderTable(new long[] { 0, 5, 6, 12 }));
+		assertArrayEquals(new long[] { 0, 1, 5, 6, 9, 12 },
+				leaderIDs(table));
+
+		table.union(new GlobalLeaderTable());
+		assertEquals(6, table.size());
+	}
+
+	/** The GL aggregator starts with an empty table */
+	@Test
+	public void testAggregator() {
+		GlobalLeaderUnionAggregator aggregator = new GlobalLeaderUnionAggregator();
+		aggregator.setAggregatedValue(aggregator.createInitialValue());
+		aggregator.aggregate(new GlobalLeaderTable(new long[] { 4, 8 }));
+		aggregator.aggregate(new GlobalLeaderTable(new long[] { 3, 8 }));
+		assertArrayEquals(new long[] { 3, 4, 8 },
+				leaderIDs(aggregator.getAggregatedValue()));
+	}
+}
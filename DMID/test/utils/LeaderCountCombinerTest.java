@@ -0,0 +1,119 @@
+package org.apache.giraph.examples.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.apache.hadoop.io.LongWritable;
+import org.junit.Test;
+
+/**
+ * Tests of {@link LeaderCountCombiner} and the in place merge of
+ * {@link LongDoubleMessage#addLeaderCounts}.
+ */
+public class LeaderCountCombinerTest {
+
+	private final LeaderCountCombiner combiner = new LeaderCountCombiner();
+
+	private final LongWritable vertexIndex = new LongWritable(1);
+
+	/** Leader indices of the message */
+	private static int[] leaderIndices(LongDoubleMessage message) {
+		return Arrays.copyOf(message.getLeaderIndices(),
+				message.getNumLeaders());
+	}
+
+	/** Counts of the leader indices of the message */
+	private static int[] leaderCounts(LongDoubleMessage message) {
+		int[] counts = new int[message.getNumLeaders()];
+		for (int i = 0; i < counts.length; ++i) {
+			counts[i] = message.getLeaderCount(i);
+		}
+		return counts;
+	}
+
+	/** Combines the replies with the given leader indices */
+	private LongDoubleMessage combine(int[]... replies) {
+		LongDoubleMessage combined = combiner.createInitialMessage();
+		for (int[] reply : replies) {
+			combiner.combine(vertexIndex, combined, new LongDoubleMessage(
+					reply, reply.length));
+		}
+		return combined;
+	}
+
+	@Test
+	public void testDisjoint() {
+		LongDoubleMessage combined = combine(new int[] { 1, 5 }, new int[] {
+				0, 3, 7 });
+		assertArrayEquals(new int[] { 0, 1, 3, 5, 7 },
+				leaderIndices(combined));
+		assertArrayEquals(new int[] { 1, 1, 1, 1, 1 }, leaderCounts(combined));
+	}
+
+	@Test
+	public void testOverlapping() {
+		LongDoubleMessage combined = combine(new int[] { 1, 2, 4 }, new int[] {
+				2, 4, 6 }, new int[] { 0, 4 });
+		assertArrayEquals(new int[] { 0, 1, 2, 4, 6 },
+				leaderIndices(combined));
+		assertArrayEquals(new int[] { 1, 1, 2, 3, 1 }, leaderCounts(combined));
+	}
+
+	/** The frontier messages of superstep10 have no leader indices */
+	@Test
+	public void testEmpty() {
+		LongDoubleMessage combined = combine(new int[0], new int[0]);
+		assertEquals(0, combined.getNumLeaders());
+
+		combined = combine(new int[] { 3 }, new int[0]);
+		assertArrayEquals(new int[] { 3 }, leaderIndices(combined));
+		assertArrayEquals(new int[] { 1 }, leaderCounts(combined));
+	}
+
+	/** Combined messages of several threads are combined again */
+	@Test
+	public void testCombinedMessages() {
+		LongDoubleMessage first = combine(new int[] { 1, 2 }, new int[] { 2 });
+		LongDoubleMessage second = combine(new int[] { 2, 3 }, new int[] { 3 });
+		combiner.combine(vertexIndex, first, second);
+		assertArrayEquals(new int[] { 1, 2, 3 }, leaderIndices(first));
+		assertArrayEquals(new int[] { 1, 3, 2 }, leaderCounts(first));
+	}
+
+	/** A reply as first message counts every leader once */
+	@Test
+	public void testReplyAsOriginal() {
+		LongDoubleMessage original = new LongDoubleMessage(new int[] { 2, 4,
+				0, 0 }, 2);
+		original.addLeaderCounts(new LongDoubleMessage(new int[] { 4 }, 1));
+		assertArrayEquals(new int[] { 2, 4 }, leaderIndices(original));
+		assertArrayEquals(new int[] { 1, 2 }, leaderCounts(original));
+	}
+
+	/** The message iterator reuses the arrays of the other message */
+	@Test
+	public void testOtherNotKept() {
+		int[] reused = { 1, 2 };
+		LongDoubleMessage combined = combiner.createInitialMessage();
+		combiner.combine(vertexIndex, combined, new LongDoubleMessage(reused,
+				2));
+		reused[0] = 5;
+		reused[1] = 6;
+		assertArrayEquals(new int[] { 1, 2 }, leaderIndices(combined));
+	}
+
+	@Test
+	public void testMany() {
+		int[][] replies = new int[100][];
+		for (int i = 0; i < replies.length; ++i) {
+			replies[i] = new int[] { i % 7, 10 + i % 3 };
+		}
+		LongDoubleMessage combined = combine(replies);
+		assertArrayEquals(new int[] { 0, 1, 2, 3, 4, 5, 6, 10, 11, 12 },
+				leaderIndices(combined));
+		assertArrayEquals(new int[] { 15, 15, 14, 14, 14, 14, 14, 34, 33, 33 },
+				leaderCounts(combined));
+	}
+}
@@ -0,0 +1,122 @@
+package org.apache.giraph.examples.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.apache.giraph.utils.WritableUtils;
+import org.junit.Test;
+
+/**
+ * Round trips of {@link LongDoubleMessage} through its tagged wire format.
+ */
+public class LongDoubleMessageTest {
+
+	/** Writes the message and reads it into a new one */
+	private static LongDoubleMessage roundTrip(LongDoubleMessage message,
+			int expectedTag, int expectedSize) {
+		byte[] bytes = WritableUtils.writeToByteArray(message);
+		assertEquals(expectedTag, bytes[0]);
+		assertEquals(expectedSize, bytes.length);
+
+		LongDoubleMessage read = new LongDoubleMessage();
+		WritableUtils.readFieldsFromByteArray(bytes, read);
+		return read;
+	}
+
+	/** First numLeaders leader indices of the message */
+	private static int[] leaderIndices(LongDoubleMessage message) {
+		return Arrays.copyOf(message.getLeaderIndices(),
+				message.getNumLeaders());
+	}
+
+	@Test
+	public void testReciprocalValue() {
+		LongDoubleMessage read = roundTrip(new LongDoubleMessage(5, 1.0 / 3),
+				2, 3);
+		assertEquals(5, read.getSourceVertexId());
+		assertEquals(1.0 / 3, read.getValue(), 0);
+	}
+
+	@Test
+	public void testFloatValue() {
+		LongDoubleMessage read = roundTrip(new LongDoubleMessage(300, 2.5), 1,
+				1 + 3 + 4);
+		assertEquals(300, read.getSourceVertexId());
+		assertEquals(2.5, read.getValue(), 0);
+	}
+
+	@Test
+	public void testDoubleValue() {
+		LongDoubleMessage read = roundTrip(new LongDoubleMessage(-7, 0.3), 0,
+				1 + 1 + 8);
+		assertEquals(-7, read.getSourceVertexId());
+		assertEquals(0.3, read.getValue(), 0);
+	}
+
+	@Test
+	public void testLargeID() {
+		LongDoubleMessage read = roundTrip(new LongDoubleMessage(
+				Long.MAX_VALUE, 0.3), 0, 1 + 9 + 8);
+		assertEquals(Long.MAX_VALUE, read.getSourceVertexId());
+	}
+
+	@Test
+	public void testRequest() {
+		LongDoubleMessage read = roundTrip(new LongDoubleMessage(42,
+				new int[] { 1, 4, 200, 0 }, 3), 3, 1 + 1 + 1 + 1 + 1 + 2);
+		assertEquals(42, read.getSourceVertexId());
+		assertArrayEquals(new int[] { 1, 4, 200 }, leaderIndices(read));
+		assertEquals(1, read.getLeaderCount(2));
+	}
+
+	@Test
+	public void testReply() {
+		LongDoubleMessage read = roundTrip(new LongDoubleMessage(new int[] {
+				0, 3 }, 2), 4, 1 + 1 + 2);
+		assertEquals(0, read.getSourceVertexId());
+		assertArrayEquals(new int[] { 0, 3 }, leaderIndices(read));
+	}
+
+	@Test
+	public void testLeaderCounts() {
+		LongDoubleMessage combined = new LongDoubleMessage();
+		combined.addLeaderCounts(new LongDoubleMessage(new int[] { 2, 5 }, 2));
+		combined.addLeaderCounts(new LongDoubleMessage(new int[] { 5 }, 1));
+
+		LongDoubleMessage read = roundTrip(combined, 5, 1 + 1 + 2 + 2);
+		assertArrayEquals(new int[] { 2, 5 }, leaderIndices(read));
+		assertEquals(1, read.getLeaderCount(0));
+		assertEquals(2, read.getLeaderCount(1));
+	}
+
+	/** The message iterator reads every message into the same object */
+	@Test
+	public void testReuse() {
+		LongDoubleMessage read = new LongDoubleMessage();
+		WritableUtils.readFieldsFromByteArray(WritableUtils
+				.writeToByteArray(new LongDoubleMessage(9, new int[] { 1, 2,
+						3 }, 3)), read);
+		WritableUtils.readFieldsFromByteArray(
+				WritableUtils.writeToByteArray(new LongDoubleMessage(new int[] {
+						7 }, 1)), read);
+		assertEquals(0, read.getSourceVertexId());
+		assertArrayEquals(new int[] { 7 }, leaderIndices(read));
+		assertEquals(1, read.getLeaderCount(0));
+
+		WritableUtils.readFieldsFromByteArray(
+				WritableUtils.writeToByteArray(new LongDoubleMessage(3, 0.5)),
+				read);
+		assertEquals(3, read.getSourceVertexId());
+		assertEquals(0.5, read.getValue(), 0);
+		assertEquals(0, read.getNumLeaders());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testUnknownTag() {
+		/** readFieldsFromByteArray wraps the IOException */
+		WritableUtils.readFieldsFromByteArray(new byte[] { 6 },
+				new LongDoubleMessage());
+	}
+}
@@ -2,11 +2,10 @@ package org.apache.giraph.examples.utils;
 
 import org.apache.giraph.aggregators.BooleanOrAggregator;
 import org.apache.giraph.aggregators.DoubleMaxAggregator;
+import org.apache.giraph.aggregators.DoubleSumAggregator;
+import org.apache.giraph.aggregators.IntMaxAggregator;
 import org.apache.giraph.aggregators.LongMaxAggregator;
-import org.apache.giraph.aggregators.matrix.dense.DoubleDenseVector;
-import org.apache.giraph.aggregators.matrix.dense.DoubleDenseVectorSumAggregator;
-import org.apache.giraph.aggregators.matrix.sparse.DoubleSparseVector;
-import org.apache.giraph.aggregators.matrix.sparse.DoubleSparseVectorSumAggregator;
+import org.apache.giraph.aggregators.LongSumAggregator;
 import org.apache.giraph.examples.DMIDComputation;
 import org.apache.giraph.master.DefaultMasterCompute;
 import org.apache.hadoop.io.BooleanWritable;
@@ -15,12 +14,12 @@ import org.apache.hadoop.io.LongWritable;
 
 /**
  * Master compute associated with {@link BinarySearchDMIDComputation}. It registers required
- * aggregators.
+ * aggregators and bisects the profitability threshold after every cascade.
  */
 public class BinarySearchDMIDMasterCompute extends DefaultMasterCompute {
 
 	public static final String RESTART_COUNTER_AGG = "aggRestart";
-	private static final boolean LOG_AGGS = true;
+	private static final boolean LOG_AGGS = false;
 	private static final String LOWER_PROFTIABILITYBOUND = "lowerProfitAGG";
 	private static final String UPPER_PROFTIABILITYBOUND = "upperProfitAGG";
 	
@@ -28,19 +27,20 @@ public class BinarySearchDMIDMasterCompute extends DefaultMasterCompute {
 	public void initialize() throws InstantiationException,
 			IllegalAccessException {
 
-		registerAggregator(DMIDComputation.DA_AGG,
-				DoubleDenseVectorSumAggregator.class);
-		registerPersistentAggregator(DMIDComputation.LS_AGG,
-				DoubleDenseVectorSumAggregator.class);
-		registerPersistentAggregator(DMIDComputation.FD_AGG,
-				DoubleSparseVectorSumAggregator.class);
+		registerAggregator(DMIDComputation.FD_AGG, DoubleSumAggregator.class);
+		registerAggregator(DMIDComputation.LOCAL_LEADERS_AGG,
+				LongSumAggregator.class);
+		registerAggregator(DMIDComputation.AVERAGE_FD_AGG,
+				DoubleMaxAggregator.class);
 		registerPersistentAggregator(DMIDComputation.GL_AGG,
-				DoubleSparseVectorSumAggregator.class);
+				GlobalLeaderUnionAggregator.class);
 
 		registerAggregator(DMIDComputation.NEW_MEMBER_AGG,
 				BooleanOrAggregator.class);
 		registerAggregator(DMIDComputation.NOT_ALL_ASSIGNED_AGG,
 				BooleanOrAggregator.class);
+		registerPersistentAggregator(DMIDComputation.ASSIGNED_AGG,
+				LongSumAggregator.class);
 
 		registerPersistentAggregator(DMIDComputation.ITERATION_AGG,
 				LongMaxAggregator.class);
@@ -54,13 +54,18 @@ public class BinarySearchDMIDMasterCompute extends DefaultMasterCompute {
 		registerPersistentAggregator(RESTART_COUNTER_AGG,
 				LongMaxAggregator.class);
 		
-	/*	registerAggregator(DMIDComputation.RW_INFINITYNORM_AGG,
+		registerAggregator(DMIDComputation.RW_INFINITYNORM_AGG,
 				DoubleMaxAggregator.class);
-		registerAggregator(DMIDComputation.RW_FINISHED_AGG,
-				LongMaxAggregator.class);
-*/
+		registerPersistentAggregator(DMIDComputation.PHASE_AGG,
+				IntMaxAggregator.class);
+
+		/** the highest valid threshold lies in [0, 1] */
+		setAggregatedValue(LOWER_PROFTIABILITYBOUND, new DoubleWritable(0));
+		setAggregatedValue(UPPER_PROFTIABILITYBOUND, new DoubleWritable(1));
 		setAggregatedValue(DMIDComputation.PROFITABILITY_AGG,
 				new DoubleWritable(0.5));
+		/** number of finished cascades */
+		setAggregatedValue(RESTART_COUNTER_AGG, new LongWritable(0));
 		setAggregatedValue(DMIDComputation.ITERATION_AGG, new LongWritable(0));
 
 	}
@@ -73,16 +78,9 @@ public class BinarySearchDMIDMasterCompute extends DefaultMasterCompute {
 		 * not work with OverwriteAggregators
 		 */
 
-	//	DoubleWritable norm = getAggregatedValue(DMIDComputation.RW_INFINITYNORM_AGG);
-
-		/*if (getSuperstep() > 3
-				&& (norm.get() <= 0.001 || getSuperstep() > DMIDComputation.RW_ITERATIONBOUND + 3)) {
-			setAggregatedValue(DMIDComputation.RW_FINISHED_AGG,
-					new LongWritable(getSuperstep()));
-		}*/
+		DMIDPhase phase = DMIDMasterCompute.getNextPhase(this);
 
 		LongWritable iterCount = getAggregatedValue(DMIDComputation.ITERATION_AGG);
-		LongWritable rwFinished = null;//getAggregatedValue(DMIDComputation.RW_FINISHED_AGG);
 		boolean hasCascadingStarted = false;
 		LongWritable newIterCount = new LongWritable((iterCount.get() + 1));
 
@@ -92,137 +90,105 @@ public class BinarySearchDMIDMasterCompute extends DefaultMasterCompute {
 			hasCascadingStarted = true;
 		}
 
-		if (getSuperstep() == rwFinished.get() + 4) {
+		if (phase == DMIDPhase.GLOBAL_LEADERS) {
+			setAverageFollowerDegree();
+		}
+
+		if (phase.isCascading() && !hasCascadingStarted) {
+			/** Start of the cascading behavior phase */
 			setAggregatedValue(DMIDComputation.ITERATION_AGG, new LongWritable(
 					1));
 			hasCascadingStarted = true;
-			initializeGL();
+			setAggregatedValue(DMIDComputation.NOT_ALL_ASSIGNED_AGG,
+					new BooleanWritable(true));
+			DMIDMasterCompute.resetAssigned(this);
+			logGlobalLeaders();
 		}
 
-		if (hasCascadingStarted && (newIterCount.get() % 3 == 1)) {
+		if (iterCount.get() != 0 && (newIterCount.get() % 3 == 1)) {
 			/** first step of one iteration */
 
 			BooleanWritable newMember = getAggregatedValue(DMIDComputation.NEW_MEMBER_AGG);
-			BooleanWritable notAllAssigned = getAggregatedValue(DMIDComputation.NOT_ALL_ASSIGNED_AGG);
+			boolean notAllAssigned = DMIDMasterCompute.setNotAllAssigned(this);
 
-			if ((notAllAssigned.get() == true) && (newMember.get() == false)) {
+			if (!notAllAssigned || !newMember.get()) {
 				/**
-				 * RESTART Cascading Behavior with lower profitability threshold
+				 * The cascade ended. If it assigned every vertex the threshold
+				 * is valid and the search goes on above, otherwise below.
+				 * RESTART Cascading Behavior with the middle of the remaining
+				 * interval.
 				 */
-				double lowerProfitBound= getAggregatedValue(LOWER_PROFTIABILITYBOUND);
-				double upperProfitBound= getAggregatedValue(DMIDComputation.PROFITABILITY_AGG);
-				setAggregatedValue(DMIDComputation.PROFITABILITY_AGG, new DoubleWritable((lowerProfitBound+upperProfitBound)/2d));
-				
-				long restartCount = getAggregatedValue(RESTART_COUNTER_AGG);
+				DoubleWritable threshold = getAggregatedValue(DMIDComputation.PROFITABILITY_AGG);
+				DoubleWritable lowerProfitBound = getAggregatedValue(LOWER_PROFTIABILITYBOUND);
+				DoubleWritable upperProfitBound = getAggregatedValue(UPPER_PROFTIABILITYBOUND);
+				double lower = lowerProfitBound.get();
+				double upper = upperProfitBound.get();
+				if (!notAllAssigned) {
+					lower = threshold.get();
+				} else {
+					upper = threshold.get();
+				}
+				setAggregatedValue(LOWER_PROFTIABILITYBOUND, new DoubleWritable(
+						lower));
+				setAggregatedValue(UPPER_PROFTIABILITYBOUND, new DoubleWritable(
+						upper));
+				setAggregatedValue(DMIDComputation.PROFITABILITY_AGG,
+						new DoubleWritable((lower + upper) / 2d));
+
+				LongWritable restartCount = getAggregatedValue(RESTART_COUNTER_AGG);
 				setAggregatedValue(RESTART_COUNTER_AGG, new LongWritable(
-						restartCount + 1));
-				
-				setAggregatedValue(DMIDComputation.ITERATION_AGG,
-						new LongWritable(1));
+						restartCount.get() + 1));
 
-			}else if((notAllAssigned.get() == false) && (newMember.get() == false)){
-				/**
-				 * Finished One cascade successfully 
-				 * */
-				double lowerProfitBound= getAggregatedValue(DMIDComputation.PROFITABILITY_AGG);
-				double upperProfitBound= getAggregatedValue(UPPER_PROFTIABILITYBOUND);
-				setAggregatedValue(DMIDComputation.PROFITABILITY_AGG, new DoubleWritable((lowerProfitBound+upperProfitBound)/2d));
-			
-				long restartCount = getAggregatedValue(RESTART_COUNTER_AGG);
-				setAggregatedValue(RESTART_COUNTER_AGG, new LongWritable(
-						restartCount + 1));
-				
 				setAggregatedValue(DMIDComputation.ITERATION_AGG,
 						new LongWritable(1));
+				DMIDMasterCompute.resetAssigned(this);
 			}
 
 		}
 
-		if (hasCascadingStarted && (iterCount.get() % 3 == 2)) {
-			/** Second step of one iteration */
+		if (hasCascadingStarted) {
+			phase = DMIDMasterCompute.getCascadingPhase(newIterCount.get(),
+					false);
+		}
+
+		if (phase == DMIDPhase.CASCADING_COUNT) {
+			/** Third step of one iteration */
 			/**
-			 * Set newMember aggregator and notAllAssigned aggregator back to
-			 * initial value
+			 * Set newMember aggregator back to initial value
 			 */
 
 			setAggregatedValue(DMIDComputation.NEW_MEMBER_AGG,
 					new BooleanWritable(false));
-			setAggregatedValue(DMIDComputation.NOT_ALL_ASSIGNED_AGG,
-					new BooleanWritable(false));
 		}
 
-		if (LOG_AGGS) {
-			if (getSuperstep() == DMIDComputation.RW_ITERATIONBOUND + 4) {
-				DoubleDenseVector convergedDA = getAggregatedValue(DMIDComputation.DA_AGG);
-				System.out.print("Aggregator DA after convergence: \nsize="
-						+ getTotalNumVertices() + "\n[ ");
-				for (int i = 0; i < getTotalNumVertices(); ++i) {
-					System.out.print(convergedDA.get(i));
-					if (i != getTotalNumVertices() - 1) {
-						System.out.print(" , ");
-					} else {
-						System.out.println(" ]\n");
-					}
-				}
-			}
-			if (getSuperstep() == DMIDComputation.RW_ITERATIONBOUND + 6) {
-				DoubleDenseVector leadershipVector = getAggregatedValue(DMIDComputation.LS_AGG);
-				System.out.print("Aggregator LS: \nsize="
-						+ getTotalNumVertices() + "\n[ ");
-				for (int i = 0; i < getTotalNumVertices(); ++i) {
-					System.out.print(leadershipVector.get(i));
-					if (i != getTotalNumVertices() - 1) {
-						System.out.print(" , ");
-					} else {
-						System.out.println(" ]\n");
-					}
-				}
-			}
-		}
+		DMIDMasterCompute.setPhase(this, phase);
 	}
 
 	/**
-	 * Initilizes the global leader aggregator with 1 for every vertex with a
-	 * higher number of followers than the average.
+	 * Sets the average follower degree of the local leaders. Local leaders
+	 * with a higher follower degree become global leaders.
 	 */
-	private void initializeGL() {
-		DoubleSparseVector initGL = new DoubleSparseVector(
-				(int) getTotalNumVertices());
-		DoubleSparseVector vecFD = getAggregatedValue(DMIDComputation.FD_AGG);
+	private void setAverageFollowerDegree() {
+		DoubleWritable sumFD = getAggregatedValue(DMIDComputation.FD_AGG);
+		LongWritable numLocalLeader = getAggregatedValue(DMIDComputation.LOCAL_LEADERS_AGG);
 
 		double averageFD = 0.0;
-		int numLocalLeader = 0;
-		/** get averageFollower degree */
-		for (int i = 0; i < getTotalNumVertices(); ++i) {
-			averageFD += vecFD.get(i);
-			if (vecFD.get(i) != 0) {
-				numLocalLeader++;
-			}
-		}
-		if (numLocalLeader != 0) {
-			averageFD = (double) averageFD / numLocalLeader;
+		if (numLocalLeader.get() != 0) {
+			averageFD = sumFD.get() / numLocalLeader.get();
 		}
-		/** set flag for globalLeader */
+		setAggregatedValue(DMIDComputation.AVERAGE_FD_AGG, new DoubleWritable(
+				averageFD));
+	}
+
+	/** Prints the global leaders elected by the vertices */
+	private void logGlobalLeaders() {
 		if (LOG_AGGS) {
+			GlobalLeaderTable globalLeaders = getAggregatedValue(DMIDComputation.GL_AGG);
 			System.out.print("Global Leader:");
-		}
-		for (int i = 0; i < getTotalNumVertices(); ++i) {
-			if (vecFD.get(i) > averageFD) {
-				initGL.set(i, 1.0);
-				if (LOG_AGGS) {
-					System.out.print("  " + i + "  ");
-				}
+			for (int i = 0; i < globalLeaders.size(); ++i) {
+				System.out.print("  " + globalLeaders.getLeaderID(i) + "  ");
 			}
-		}
-		if (LOG_AGGS) {
 			System.out.println("\n");
 		}
-		/** set Global Leader aggregator */
-		setAggregatedValue(DMIDComputation.GL_AGG, initGL);
-
-		/** set not all vertices assigned aggregator to true */
-		setAggregatedValue(DMIDComputation.NOT_ALL_ASSIGNED_AGG,
-				new BooleanWritable(true));
-
 	}
 }
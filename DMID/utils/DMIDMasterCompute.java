@@ -2,15 +2,16 @@ package org.apache.giraph.examples.utils;
 
 import org.apache.giraph.aggregators.BooleanOrAggregator;
 import org.apache.giraph.aggregators.DoubleMaxAggregator;
+import org.apache.giraph.aggregators.DoubleSumAggregator;
+import org.apache.giraph.aggregators.IntMaxAggregator;
 import org.apache.giraph.aggregators.LongMaxAggregator;
-import org.apache.giraph.aggregators.matrix.dense.DoubleDenseVector;
-import org.apache.giraph.aggregators.matrix.dense.DoubleDenseVectorSumAggregator;
-import org.apache.giraph.aggregators.matrix.sparse.DoubleSparseVector;
-import org.apache.giraph.aggregators.matrix.sparse.DoubleSparseVectorSumAggregator;
+import org.apache.giraph.aggregators.LongSumAggregator;
 import org.apache.giraph.examples.DMIDComputation;
 import org.apache.giraph.master.DefaultMasterCompute;
+import org.apache.giraph.master.MasterCompute;
 import org.apache.hadoop.io.BooleanWritable;
 import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.IntWritable;
 import org.apache.hadoop.io.LongWritable;
 
 /**
@@ -27,19 +28,20 @@ public class DMIDMasterCompute extends DefaultMasterCompute {
 	public void initialize() throws InstantiationException,
 			IllegalAccessException {
 
-		registerAggregator(DMIDComputation.DA_AGG,
-				DoubleDenseVectorSumAggregator.class);
-		registerPersistentAggregator(DMIDComputation.LS_AGG,
-				DoubleDenseVectorSumAggregator.class);
-		registerPersistentAggregator(DMIDComputation.FD_AGG,
-				DoubleSparseVectorSumAggregator.class);
+		registerAggregator(DMIDComputation.FD_AGG, DoubleSumAggregator.class);
+		registerAggregator(DMIDComputation.LOCAL_LEADERS_AGG,
+				LongSumAggregator.class);
+		registerAggregator(DMIDComputation.AVERAGE_FD_AGG,
+				DoubleMaxAggregator.class);
 		registerPersistentAggregator(DMIDComputation.GL_AGG,
-				DoubleSparseVectorSumAggregator.class);
+				GlobalLeaderUnionAggregator.class);
 
 		registerAggregator(DMIDComputation.NEW_MEMBER_AGG,
 				BooleanOrAggregator.class);
 		registerAggregator(DMIDComputation.NOT_ALL_ASSIGNED_AGG,
 				BooleanOrAggregator.class);
+		registerPersistentAggregator(DMIDComputation.ASSIGNED_AGG,
+				LongSumAggregator.class);
 
 		registerPersistentAggregator(DMIDComputation.ITERATION_AGG,
 				LongMaxAggregator.class);
@@ -48,15 +50,25 @@ public class DMIDMasterCompute extends DefaultMasterCompute {
 				DoubleMaxAggregator.class);
 		registerPersistentAggregator(RESTART_COUNTER_AGG,
 				LongMaxAggregator.class);
-		//registerAggregator(DMIDComputation.RW_INFINITYNORM_AGG,
-			//	DoubleMaxAggregator.class);
-		//registerAggregator(DMIDComputation.RW_FINISHED_AGG,
-				//LongMaxAggregator.class);
+		registerAggregator(DMIDComputation.RW_INFINITYNORM_AGG,
+				DoubleMaxAggregator.class);
+		registerPersistentAggregator(DMIDComputation.PHASE_AGG,
+				IntMaxAggregator.class);
+
+		registerAggregator(DMIDComputation.NEW_MEMBER_LANES_AGG,
+				LongBitOrAggregator.class);
+		registerAggregator(DMIDComputation.NOT_ALL_ASSIGNED_LANES_AGG,
+				LongBitOrAggregator.class);
+		registerPersistentAggregator(DMIDComputation.FINISHED_LANES_AGG,
+				LongBitOrAggregator.class);
+		registerPersistentAggregator(DMIDComputation.SELECTED_LANE_AGG,
+				LongMaxAggregator.class);
 
 		setAggregatedValue(DMIDComputation.PROFITABILITY_AGG,
-				new DoubleWritable(0.5));
+				new DoubleWritable(getProfitabilityThreshold(1)));
 		setAggregatedValue(RESTART_COUNTER_AGG, new LongWritable(1));
 		setAggregatedValue(DMIDComputation.ITERATION_AGG, new LongWritable(0));
+		setAggregatedValue(DMIDComputation.SELECTED_LANE_AGG, new LongWritable(-1));
 
 	}
 
@@ -67,7 +79,9 @@ public class DMIDMasterCompute extends DefaultMasterCompute {
 		 * compute, before starting vertex compute of the same superstep. Does
 		 * not work with OverwriteAggregators
 		 */
-		
+
+		DMIDPhase phase = getNextPhase();
+		boolean pushCascading = DMIDComputation.PUSH_CASCADING.get(getConf());
 
 		LongWritable iterCount = getAggregatedValue(DMIDComputation.ITERATION_AGG);
 		
@@ -81,126 +95,290 @@ public class DMIDMasterCompute extends DefaultMasterCompute {
 			hasCascadingStarted = true;
 		}
 
-		if (getSuperstep() ==  DMIDComputation.RW_ITERATIONBOUND+ 8) {
+		if (phase == DMIDPhase.GLOBAL_LEADERS) {
+			setAverageFollowerDegree();
+		}
+
+		if (phase.isCascading() && !hasCascadingStarted) {
+			/** Start of the cascading behavior phase */
 			setAggregatedValue(DMIDComputation.NEW_MEMBER_AGG,
 					new BooleanWritable(false));
 			setAggregatedValue(DMIDComputation.NOT_ALL_ASSIGNED_AGG,
 					new BooleanWritable(true));
 			setAggregatedValue(DMIDComputation.ITERATION_AGG, new LongWritable(1));
+			resetAssigned(this);
 			hasCascadingStarted = true;
-			initializeGL();
+			logGlobalLeaders();
 		}
-		if (hasCascadingStarted && (newIterCount.get() % 3 == 1)) {
+
+		int numLanes = DMIDComputation.SPECULATIVE_THRESHOLDS.get(getConf());
+		if (numLanes > 1) {
+			if (hasCascadingStarted && newIterCount.get() >= 3) {
+				selectSpeculativeLane(numLanes);
+			}
+			if (hasCascadingStarted) {
+				phase = DMIDPhase.CASCADING_SPECULATIVE;
+			}
+			setPhase(phase);
+			return;
+		}
+		/**
+		 * Has an iteration of the cascading behavior phase ended? In push mode
+		 * every superstep after the (re)start is an iteration.
+		 */
+		boolean iterationEnded = pushCascading ? newIterCount.get() >= 3
+				: newIterCount.get() % 3 == 1;
+		if (iterCount.get() != 0 && iterationEnded) {
 			/** first step of one iteration */
 			LongWritable restartCountWritable = getAggregatedValue(RESTART_COUNTER_AGG);
 			Long restartCount=restartCountWritable.get();
 			BooleanWritable newMember = getAggregatedValue(DMIDComputation.NEW_MEMBER_AGG);
-			BooleanWritable notAllAssigned = getAggregatedValue(DMIDComputation.NOT_ALL_ASSIGNED_AGG);
+			boolean notAllAssigned = setNotAllAssigned(this);
 
-			if ((notAllAssigned.get() == true) && (newMember.get() == false)) {
+			if (notAllAssigned && (newMember.get() == false)) {
 				/**
 				 * RESTART Cascading Behavior with lower profitability threshold
 				 */
 
 				
-				double newThreshold = 1 - (PROFTIABILITY_DELTA * (restartCount + 1));
+				double newThreshold = getProfitabilityThreshold(restartCount + 1);
 
 				setAggregatedValue(RESTART_COUNTER_AGG, new LongWritable(
 						restartCount + 1));
 				setAggregatedValue(DMIDComputation.PROFITABILITY_AGG,
 						new DoubleWritable(newThreshold));
-				setAggregatedValue(DMIDComputation.ITERATION_AGG,
-						new LongWritable(1));
+				if (!DMIDComputation.WARM_RESTART.get(getConf())) {
+					/** start again from the global leaders */
+					setAggregatedValue(DMIDComputation.ITERATION_AGG,
+							new LongWritable(1));
+					resetAssigned(this);
+				}
 
 			}
 
 		}
 
-		if (hasCascadingStarted && (iterCount.get() % 3 == 2)) {
-			/** Second step of one iteration */
+		if (hasCascadingStarted) {
+			phase = getCascadingPhase(newIterCount.get(), pushCascading);
+		}
+
+		if (phase == DMIDPhase.CASCADING_COUNT) {
+			/** Third step of one iteration */
 			/**
-			 * Set newMember aggregator and notAllAssigned aggregator back to
-			 * initial value
+			 * Set newMember aggregator back to initial value
 			 */
 
 			setAggregatedValue(DMIDComputation.NEW_MEMBER_AGG,
 					new BooleanWritable(false));
-			setAggregatedValue(DMIDComputation.NOT_ALL_ASSIGNED_AGG,
-					new BooleanWritable(false));
 		}
 
-		if (LOG_AGGS) {
-			if (getSuperstep() <= DMIDComputation.RW_ITERATIONBOUND + 4) {
-				DoubleDenseVector convergedDA = getAggregatedValue(DMIDComputation.DA_AGG);
-				System.out.print("Aggregator DA at step: "+getSuperstep()+" \nsize="
-						+ getTotalNumVertices() + "\n{ ");
-				for (int i = 0; i < getTotalNumVertices(); ++i) {
-					System.out.print(convergedDA.get(i));
-					if (i != getTotalNumVertices() - 1) {
-						System.out.print(" , ");
-					} else {
-						System.out.println(" }\n");
-					}
-				}
+		setPhase(phase);
+	}
+
+	/**
+	 * Sets the number of assigned vertices to the number of global leaders,
+	 * the only members on a start and a cold restart of the cascade. Shared
+	 * with the binary search variant.
+	 */
+	static void resetAssigned(MasterCompute master) {
+		GlobalLeaderTable globalLeaders = master
+				.getAggregatedValue(DMIDComputation.GL_AGG);
+		master.setAggregatedValue(DMIDComputation.ASSIGNED_AGG,
+				new LongWritable(globalLeaders.size()));
+	}
+
+	/**
+	 * Broadcasts whether a vertex is not member of any community at the end
+	 * of an iteration. Halted vertices do not report it, so the master
+	 * compares the number of assigned vertices with the number of vertices.
+	 * Shared with the binary search variant.
+	 *
+	 * @return true if not all vertices are assigned
+	 */
+	static boolean setNotAllAssigned(MasterCompute master) {
+		LongWritable numAssigned = master
+				.getAggregatedValue(DMIDComputation.ASSIGNED_AGG);
+		boolean notAllAssigned = numAssigned.get() < master
+				.getTotalNumVertices();
+		master.setAggregatedValue(DMIDComputation.NOT_ALL_ASSIGNED_AGG,
+				new BooleanWritable(notAllAssigned));
+		return notAllAssigned;
+	}
+
+	/**
+	 * Returns the phase that follows the phase of the last superstep. In the
+	 * cascading behavior phase the result is the last phase, compute chooses
+	 * the next one.
+	 */
+	private DMIDPhase getNextPhase() {
+		return getNextPhase(this);
+	}
+
+	/** See {@link #getNextPhase()}, shared with the binary search variant */
+	static DMIDPhase getNextPhase(MasterCompute master) {
+		if (master.getSuperstep() == 0) {
+			/** The undirected mode knows the edge weights without messages */
+			return DMIDComputation.UNDIRECTED.get(master.getConf())
+					? DMIDPhase.WEIGHTED_IN_DEGREE : DMIDPhase.EDGE_WEIGHTS;
+		}
+		IntWritable lastPhase = master
+				.getAggregatedValue(DMIDComputation.PHASE_AGG);
+		DMIDPhase phase = DMIDPhase.valueOf(lastPhase.get());
+		if (phase == DMIDPhase.RANDOM_WALK) {
+			return isRandomWalkFinished(master) ? DMIDPhase.LEADERSHIP
+					: DMIDPhase.RANDOM_WALK;
+		}
+		return phase.isCascading() ? phase : phase.next();
+	}
+
+	/**
+	 * Returns the cascading phase of the given iteration count. In push mode
+	 * every superstep is an iteration, otherwise one iteration takes three
+	 * supersteps.
+	 */
+	static DMIDPhase getCascadingPhase(long iterCount, boolean pushCascading) {
+		if (pushCascading) {
+			return DMIDPhase.CASCADING_PUSH;
+		}
+		switch ((int) (iterCount % 3)) {
+		case 1:
+			return DMIDPhase.CASCADING_REQUEST;
+		case 2:
+			return DMIDPhase.CASCADING_REPLY;
+		default:
+			return DMIDPhase.CASCADING_COUNT;
+		}
+	}
+
+	/**
+	 * Broadcasts the phase of this superstep. The vertices reply to the
+	 * membership requests, wake up the frontier or push their new
+	 * memberships in all cascading phases but the request, so the messages
+	 * sent to the same vertex are combined.
+	 */
+	private void setPhase(DMIDPhase phase) {
+		setPhase(this, phase);
+	}
+
+	/** See {@link #setPhase(DMIDPhase)}, shared with the binary search variant */
+	static void setPhase(MasterCompute master, DMIDPhase phase) {
+		master.setAggregatedValue(DMIDComputation.PHASE_AGG, new IntWritable(
+				phase.ordinal()));
+		if (phase.isCascading() && phase != DMIDPhase.CASCADING_REQUEST) {
+			master.setMessageCombiner(LeaderCountCombiner.class);
+		} else {
+			/** The combiner would be kept for the following supersteps */
+			master.setMessageCombiner(null);
+		}
+	}
+
+	/**
+	 * Speculative mode, see DMIDComputation.SPECULATIVE_THRESHOLDS. A lane
+	 * ends when all vertices are assigned in it. The lanes are tried in the
+	 * order of the sequential restarts: a lane counts once every lane with a
+	 * higher threshold stalled, i.e. no vertex adopted a behavior but not all
+	 * are assigned. If all lanes stalled, the next numLanes thresholds start
+	 * from the global leaders.
+	 */
+	private void selectSpeculativeLane(int numLanes) {
+		LongWritable selectedLane = getAggregatedValue(DMIDComputation.SELECTED_LANE_AGG);
+		if (selectedLane.get() >= 0) {
+			return;
+		}
+		LongWritable restartCount = getAggregatedValue(RESTART_COUNTER_AGG);
+		LongWritable newMemberLanes = getAggregatedValue(DMIDComputation.NEW_MEMBER_LANES_AGG);
+		LongWritable notAllAssignedLanes = getAggregatedValue(DMIDComputation.NOT_ALL_ASSIGNED_LANES_AGG);
+		LongWritable finishedLanes = getAggregatedValue(DMIDComputation.FINISHED_LANES_AGG);
+
+		/** The vertices do not aggregate finished lanes */
+		long finished = finishedLanes.get()
+				| (~notAllAssignedLanes.get() & ((1L << numLanes) - 1));
+		setAggregatedValue(DMIDComputation.FINISHED_LANES_AGG,
+				new LongWritable(finished));
+
+		for (int lane = 0; lane < numLanes; ++lane) {
+			if ((finished & (1L << lane)) != 0) {
+				/** TERMINATION with the threshold of this lane */
+				long laneRestartCount = restartCount.get() + lane;
+				setAggregatedValue(DMIDComputation.SELECTED_LANE_AGG,
+						new LongWritable(lane));
+				setAggregatedValue(RESTART_COUNTER_AGG, new LongWritable(
+						laneRestartCount));
+				setAggregatedValue(DMIDComputation.PROFITABILITY_AGG,
+						new DoubleWritable(
+								getProfitabilityThreshold(laneRestartCount)));
+				return;
 			}
-			if (getSuperstep() == DMIDComputation.RW_ITERATIONBOUND +6) {
-				DoubleDenseVector leadershipVector = getAggregatedValue(DMIDComputation.LS_AGG);
-				System.out.print("Aggregator LS: \nsize="
-						+ getTotalNumVertices() + "\n{ ");
-				for (int i = 0; i < getTotalNumVertices(); ++i) {
-					System.out.print(leadershipVector.get(i));
-					if (i != getTotalNumVertices() - 1) {
-						System.out.print(" , ");
-					} else {
-						System.out.println(" }\n");
-					}
-				}
+			if ((newMemberLanes.get() & (1L << lane)) != 0) {
+				/** the cascade of this lane goes on */
+				return;
 			}
 		}
+
+		/**
+		 * RESTART all lanes with the next lower profitability thresholds
+		 */
+		long newRestartCount = restartCount.get() + numLanes;
+		setAggregatedValue(RESTART_COUNTER_AGG, new LongWritable(
+				newRestartCount));
+		setAggregatedValue(DMIDComputation.PROFITABILITY_AGG,
+				new DoubleWritable(getProfitabilityThreshold(newRestartCount)));
+		setAggregatedValue(DMIDComputation.ITERATION_AGG, new LongWritable(1));
+		setAggregatedValue(DMIDComputation.FINISHED_LANES_AGG,
+				new LongWritable(0));
+	}
+
+	/**
+	 * Profitability threshold of the basic DMID after restartCount - 1
+	 * restarts, see RESTART_COUNTER_AGG.
+	 */
+	public static double getProfitabilityThreshold(long restartCount) {
+		if (restartCount <= 1) {
+			return 0.5;
+		}
+		return 1 - (PROFTIABILITY_DELTA * restartCount);
+	}
+
+	/**
+	 * The random walk phase ends if the infinity norm of the last DA update,
+	 * relative to the mean DA entry 1/N, is smaller than the precision factor
+	 * or the iteration bound is reached.
+	 */
+	private static boolean isRandomWalkFinished(MasterCompute master) {
+		/** infinity norm of DA^t - DA^(t-1), the last random walk step */
+		DoubleWritable norm = master
+				.getAggregatedValue(DMIDComputation.RW_INFINITYNORM_AGG);
+		return norm.get() * master.getTotalNumVertices() < DMIDComputation
+				.RW_PRECISION.get(master.getConf())
+				|| master.getSuperstep() > DMIDComputation
+						.getLastRandomWalkSuperstep(master.getConf());
 	}
 
 	/**
-	 * Initilizes the global leader aggregator with 1 for every vertex with a
-	 * higher number of followers than the average.
+	 * Sets the average follower degree of the local leaders. Local leaders
+	 * with a higher follower degree become global leaders.
 	 */
-	private void initializeGL() {
-		DoubleSparseVector initGL = new DoubleSparseVector(
-				(int) getTotalNumVertices());
-		DoubleSparseVector vecFD = getAggregatedValue(DMIDComputation.FD_AGG);
+	private void setAverageFollowerDegree() {
+		DoubleWritable sumFD = getAggregatedValue(DMIDComputation.FD_AGG);
+		LongWritable numLocalLeader = getAggregatedValue(DMIDComputation.LOCAL_LEADERS_AGG);
 
 		double averageFD = 0.0;
-		int numLocalLeader = 0;
-		/** get averageFollower degree */
-		for (int i = 0; i < getTotalNumVertices(); ++i) {
-			averageFD += vecFD.get(i);
-			if (vecFD.get(i) != 0) {
-				numLocalLeader++;
-			}
-		}
-		if (numLocalLeader != 0) {
-			averageFD = (double) averageFD / numLocalLeader;
+		if (numLocalLeader.get() != 0) {
+			averageFD = sumFD.get() / numLocalLeader.get();
 		}
-		/** set flag for globalLeader */
+		setAggregatedValue(DMIDComputation.AVERAGE_FD_AGG, new DoubleWritable(
+				averageFD));
+	}
+
+	/** Prints the global leaders elected by the vertices */
+	private void logGlobalLeaders() {
 		if (LOG_AGGS) {
+			GlobalLeaderTable globalLeaders = getAggregatedValue(DMIDComputation.GL_AGG);
 			System.out.print("Global Leader:");
-		}
-		for (int i = 0; i < getTotalNumVertices(); ++i) {
-			if (vecFD.get(i) > averageFD) {
-				initGL.set(i, 1.0);
-				if (LOG_AGGS) {
-					System.out.print("  " + i + "  ");
-				}
+			for (int i = 0; i < globalLeaders.size(); ++i) {
+				System.out.print("  " + globalLeaders.getLeaderID(i) + "  ");
 			}
-		}
-		if (LOG_AGGS) {
 			System.out.println("\n");
 		}
-		/** set Global Leader aggregator */
-		setAggregatedValue(DMIDComputation.GL_AGG, initGL);
-
-		/** set not all vertices assigned aggregator to true */
-		setAggregatedValue(DMIDComputation.NOT_ALL_ASSIGNED_AGG,
-				new BooleanWritable(true));
-
 	}
 }
@@ -0,0 +1,223 @@
+package org.apache.giraph.examples.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import it.unimi.dsi.fastutil.Swapper;
+import it.unimi.dsi.fastutil.ints.AbstractIntComparator;
+
+import org.apache.giraph.edge.Edge;
+import org.apache.giraph.edge.EdgeFactory;
+import org.apache.giraph.edge.ReusableEdge;
+import org.apache.giraph.edge.ReuseObjectsOutEdges;
+import org.apache.giraph.edge.StrictRandomAccessOutEdges;
+import org.apache.hadoop.io.DoubleWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Out-edges of a DMID vertex. The target IDs are kept in ascending order in a
+ * long array with the weights in a parallel double array, so the weight of
+ * the edge to a given vertex is found by binary search in O(log(out-degree)).
+ * Uses 16 bytes per edge. Edges added out of order are sorted on the next
+ * lookup. The iterator reuses one edge object and getEdgeValue reuses one
+ * weight object, so the returned values are only valid until the next call.
+ */
+public class DMIDOutEdges implements
+		StrictRandomAccessOutEdges<LongWritable, DoubleWritable>,
+		ReuseObjectsOutEdges<LongWritable, DoubleWritable> {
+
+	/** IDs of the target vertices, ascending if sorted is true */
+	private long[] targetIDs;
+	/** Weights of the edges, same order as targetIDs */
+	private double[] weights;
+	/** Number of edges */
+	private int numEdges;
+	/** Are the first numEdges entries of targetIDs in ascending order? */
+	private boolean sorted;
+	/** Returned by every call of getEdgeValue() */
+	private final DoubleWritable edgeValue = new DoubleWritable();
+
+	@Override
+	public void initialize(
+			Iterable<Edge<LongWritable, DoubleWritable>> edges) {
+		initialize();
+		for (Edge<LongWritable, DoubleWritable> edge : edges) {
+			add(edge);
+		}
+	}
+
+	@Override
+	public void initialize(int capacity) {
+		targetIDs = new long[capacity];
+		weights = new double[capacity];
+		numEdges = 0;
+		sorted = true;
+	}
+
+	@Override
+	public void initialize() {
+		initialize(4);
+	}
+
+	@Override
+	public void add(Edge<LongWritable, DoubleWritable> edge) {
+		if (numEdges == targetIDs.length) {
+			int capacity = Math.max(4, 2 * numEdges);
+			targetIDs = Arrays.copyOf(targetIDs, capacity);
+			weights = Arrays.copyOf(weights, capacity);
+		}
+		long targetID = edge.getTargetVertexId().get();
+		if (numEdges > 0 && targetIDs[numEdges - 1] > targetID) {
+			sorted = false;
+		}
+		targetIDs[numEdges] = targetID;
+		weights[numEdges] = edge.getValue().get();
+		numEdges++;
+	}
+
+	@Override
+	public void remove(LongWritable targetVertexId) {
+		long targetID = targetVertexId.get();
+		int numKept = 0;
+		for (int i = 0; i < numEdges; ++i) {
+			if (targetIDs[i] != targetID) {
+				targetIDs[numKept] = targetIDs[i];
+				weights[numKept] = weights[i];
+				numKept++;
+			}
+		}
+		numEdges = numKept;
+	}
+
+	@Override
+	public int size() {
+		return numEdges;
+	}
+
+	@Override
+	public DoubleWritable getEdgeValue(LongWritable targetVertexId) {
+		int index = indexOf(targetVertexId.get());
+		if (index < 0) {
+			return null;
+		}
+		edgeValue.set(weights[index]);
+		return edgeValue;
+	}
+
+	@Override
+	public void setEdgeValue(LongWritable targetVertexId,
+			DoubleWritable edgeValue) {
+		int index = indexOf(targetVertexId.get());
+		if (index >= 0) {
+			weights[index] = edgeValue.get();
+		}
+	}
+
+	@Override
+	public Iterator<Edge<LongWritable, DoubleWritable>> iterator() {
+		return new Iterator<Edge<LongWritable, DoubleWritable>>() {
+			/** Position of the next edge */
+			private int position = 0;
+			/** Returned by every call of next() */
+			private final ReusableEdge<LongWritable, DoubleWritable> edge = EdgeFactory
+					.createReusable(new LongWritable(), new DoubleWritable());
+
+			@Override
+			public boolean hasNext() {
+				return position < numEdges;
+			}
+
+			@Override
+			public Edge<LongWritable, DoubleWritable> next() {
+				edge.getTargetVertexId().set(targetIDs[position]);
+				edge.getValue().set(weights[position]);
+				position++;
+				return edge;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException(
+						"remove: Not supported, use DMIDOutEdges.remove");
+			}
+		};
+	}
+
+	@Override
+	public void readFields(DataInput input) throws IOException {
+		int size = WritableUtils.readVInt(input);
+		initialize(size);
+
+		long targetID = 0;
+		for (int i = 0; i < size; ++i) {
+			targetID += WritableUtils.readVLong(input);
+			targetIDs[i] = targetID;
+		}
+		for (int i = 0; i < size; ++i) {
+			weights[i] = input.readDouble();
+		}
+		numEdges = size;
+	}
+
+	@Override
+	public void write(DataOutput output) throws IOException {
+		/** varint deltas of the sorted IDs followed by the weights */
+		ensureSorted();
+		WritableUtils.writeVInt(output, numEdges);
+
+		long previousID = 0;
+		for (int i = 0; i < numEdges; ++i) {
+			WritableUtils.writeVLong(output, targetIDs[i] - previousID);
+			previousID = targetIDs[i];
+		}
+		for (int i = 0; i < numEdges; ++i) {
+			output.writeDouble(weights[i]);
+		}
+	}
+
+	/**
+	 * Index of an edge to the given vertex, -1 if there is no such edge.
+	 */
+	private int indexOf(long targetID) {
+		ensureSorted();
+		int index = Arrays.binarySearch(targetIDs, 0, numEdges, targetID);
+		return index >= 0 ? index : -1;
+	}
+
+	/** Sorts the edges by target ID if edges were added out of order */
+	private void ensureSorted() {
+		if (!sorted) {
+			sortByID(targetIDs, weights, numEdges);
+			sorted = true;
+		}
+	}
+
+	/**
+	 * Sorts the first numEntries entries of ids in ascending order and
+	 * applies the same permutation to values.
+	 */
+	static void sortByID(final long[] ids, final double[] values,
+			int numEntries) {
+		it.unimi.dsi.fastutil.Arrays.quickSort(0, numEntries,
+				new AbstractIntComparator() {
+					@Override
+					public int compare(int a, int b) {
+						return Long.compare(ids[a], ids[b]);
+					}
+				}, new Swapper() {
+					@Override
+					public void swap(int a, int b) {
+						long tmpID = ids[a];
+						ids[a] = ids[b];
+						ids[b] = tmpID;
+						double tmpValue = values[a];
+						values[a] = values[b];
+						values[b] = tmpValue;
+					}
+				});
+	}
+}
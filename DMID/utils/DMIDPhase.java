@@ -0,0 +1,62 @@
+package org.apache.giraph.examples.utils;
+
+import org.apache.giraph.examples.DMIDComputation;
+
+/**
+ * Phases of {@link DMIDComputation}, each one takes one superstep. The master
+ * compute chooses the phase of every superstep and broadcasts it in the
+ * PHASE_AGG aggregator, the vertices run the compute method of the phase.
+ */
+public enum DMIDPhase {
+	/** Send the edge weights along the outgoing edges */
+	EDGE_WEIGHTS,
+	/** Save the weighted in-degree and the predecessors, reply to them */
+	WEIGHTED_IN_DEGREE,
+	/** Set up the disassortativity column, start the random walk */
+	DISASSORTATIVITY,
+	/** One step of the random walk, repeated until the master ends it */
+	RANDOM_WALK,
+	/** Calculate the leadership entry LS, send it along the outgoing edges */
+	LEADERSHIP,
+	/** Reply to the possible followers with the influence on them */
+	INFLUENCE,
+	/** Find the local leaders, send them the shares */
+	LOCAL_LEADERS,
+	/** Sum up the follower degree of the local leaders */
+	FOLLOWER_DEGREE,
+	/** Elect the global leaders */
+	GLOBAL_LEADERS,
+	/** Cascading behavior: request the memberships of the successors */
+	CASCADING_REQUEST,
+	/** Cascading behavior: reply to the membership requests */
+	CASCADING_REPLY,
+	/** Cascading behavior: count the replies, join the communities */
+	CASCADING_COUNT,
+	/** Cascading behavior in push mode, one iteration */
+	CASCADING_PUSH,
+	/** Cascading behavior in speculative mode, one iteration */
+	CASCADING_SPECULATIVE;
+
+	/** All phases, indexed by the ordinal */
+	private static final DMIDPhase[] PHASES = values();
+
+	/** Returns the phase with the given ordinal */
+	public static DMIDPhase valueOf(int ordinal) {
+		return PHASES[ordinal];
+	}
+
+	/** Is this an iteration point of the cascading behavior phase? */
+	public boolean isCascading() {
+		return ordinal() >= CASCADING_REQUEST.ordinal();
+	}
+
+	/**
+	 * Returns the phase that follows this one if the order is fixed, from
+	 * EDGE_WEIGHTS to DISASSORTATIVITY and from LEADERSHIP to the first
+	 * cascading phase. The master decides when the random walk ends and which
+	 * cascading phase follows.
+	 */
+	public DMIDPhase next() {
+		return PHASES[ordinal() + 1];
+	}
+}
@@ -3,11 +3,15 @@ package org.apache.giraph.examples.utils;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
-import org.apache.giraph.aggregators.matrix.sparse.DoubleSparseVector;
+import java.util.Arrays;
+
+import it.unimi.dsi.fastutil.ints.Int2DoubleMap;
+import it.unimi.dsi.fastutil.ints.Int2DoubleOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
 
 import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
 
 /**
  * Vertex value used for the DMID algorithm
@@ -15,34 +19,89 @@ import org.apache.hadoop.io.Writable;
 public class DMIDVertexValue implements Writable {
 	/** Invalid weightedInDegree */
 	public static final Double INVALID_DEGREE = Double.valueOf(-1);
+	/**
+	 * Written as an int after weightedInDegree to mark the current layout. The
+	 * oldest versions wrote the size of the membership map there, an int >= 0,
+	 * with leader IDs as long keys, followed by the size of disCol and all its
+	 * entries. DELTA_DISCOL writes the varint deltas of the sorted neighbor
+	 * IDs of disCol followed by the values.
+	 */
+	private static final int DELTA_DISCOL = -1;
 	/**
 	 * Stores the sum of all incoming edges
 	 */
 	private Double weightedInDegree;
 	/**
-	 * Stores the Membership value for each community. The Long value denotes
-	 * the ID of the community leader. The Double value determines the
-	 * membership degree
+	 * Stores the non-zero membership degrees of this vertex. The key is the
+	 * index of the community leader in the {@link GlobalLeaderTable}, the value
+	 * determines the membership degree. Communities without an entry have the
+	 * membership degree 0.
+	 */
+	private Int2DoubleOpenHashMap membershipDegree;
+	/**
+	 * Column of the disassortativity matrix AS with index vertex.getID(). Only
+	 * the non-zero entries are stored: disColIDs holds the IDs of the
+	 * successors in ascending order, disColValues the matching entries.
+	 */
+	private long[] disColIDs;
+	private double[] disColValues;
+	/**
+	 * Entry of the disassortativity vector DA with index vertex.getID() in the
+	 * current step of the random walk
+	 */
+	private double daEntry;
+	/**
+	 * IDs of the vertices with an edge to this vertex in ascending order
+	 */
+	private long[] predecessors = new long[0];
+	/**
+	 * Weights of the edges from the predecessors to this vertex, same order
+	 * as predecessors
+	 */
+	private double[] predecessorWeights = new double[0];
+	/**
+	 * Follower degree of this vertex, the sum of the shares of the vertices
+	 * that chose it as local leader. 0 if it is no local leader.
+	 */
+	private double followerDegree;
+	/**
+	 * Entry of the leadership vector LS with index vertex.getID()
+	 */
+	private double leadership;
+	/**
+	 * Only used by the push mode and the warm restarts of the cascading
+	 * behavior phase. Number of successors that are member of a community,
+	 * keyed by the leader index. Communities this vertex is member of are not
+	 * counted.
+	 */
+	private Int2IntOpenHashMap memberCounts = new Int2IntOpenHashMap(0);
+	/**
+	 * Only used in the binary search variant of DMID. Membership degrees of
+	 * the best valid cover found in the cascading behavior phase, null if no
+	 * cascade assigned every vertex yet.
 	 */
-	private HashMap<Long, Double> membershipDegree = new HashMap<Long, Double>();
-	/**Only used in the binary search variant of DMID.
-	 * Stores the best valid cover found in the cascading phase.
-	 * */
-	//private HashMap<Long, Double> bestValidMemDeg=new HashMap<Long, Double>();
+	private Int2DoubleOpenHashMap bestValidMemDeg;
 	/**
-	 * Column of the disassortativity matrix AS with index vertex.getID() 
+	 * IDs of the global leaders of the communities this vertex is member of
+	 * in ascending order, memberDegrees the membership degrees in the same
+	 * order. Translated from the membership degrees at the end of every
+	 * cascading step of the vertex, so the output format needs no leader
+	 * table.
 	 */
-	private DoubleSparseVector disCol;
+	private long[] memberLeaderIDs = new long[0];
+	private double[] memberDegrees = new double[0];
 	/**
-	 * Size of disCol
+	 * Value of the restart counter when this vertex last ran in the cascading
+	 * behavior phase, -1 before the phase. A halted vertex misses restarts, it
+	 * catches up when it runs again.
 	 */
-	private Long disSize; 
+	private long restartEpoch = -1;
 
 	/**
 	 * Default constructor
 	 */
 	public DMIDVertexValue() {
-		this(new Double(INVALID_DEGREE), new HashMap<Long, Double>(), new DoubleSparseVector(), new Long(0));
+		this(INVALID_DEGREE, newMembershipDegree(), new long[0], new double[0]);
 	}
 
 	/**
@@ -51,20 +110,21 @@ public class DMIDVertexValue implements Writable {
 	 * @param weightedInDegree
 	 *            sum of all incoming edges
 	 * @param MembershipDegree
-	 *            Map with community leader ID as a key and membership degree as
-	 *            value
-	 * @param disCol 
-	 *            Column of the disassortativity matrix AS with index vertex.getID()
-	 * @param disSize
-	 *            Size of disCol         
+	 *            Map with the leader index of the community as a key and the
+	 *            non-zero membership degree as value
+	 * @param disColIDs
+	 *            IDs of the non-zero entries of the column of the
+	 *            disassortativity matrix AS with index vertex.getID(), sorted
+	 *            in ascending order
+	 * @param disColValues
+	 *            Non-zero entries of the column, same order as disColIDs
 	 */
 	public DMIDVertexValue(Double weightedInDegree,
-			HashMap<Long, Double> MembershipDegree, DoubleSparseVector disCol, Long disSize) {
+			Int2DoubleOpenHashMap MembershipDegree, long[] disColIDs, double[] disColValues) {
 		this.weightedInDegree = weightedInDegree;
 		this.membershipDegree = MembershipDegree;
-		//this.bestValidMemDeg=new HashMap<Long,Double>();
-		this.disCol = disCol;
-		this.disSize = disSize;
+		this.disColIDs = disColIDs;
+		this.disColValues = disColValues;
 	}
 
 	@Override
@@ -72,70 +132,203 @@ public class DMIDVertexValue implements Writable {
 
 		this.weightedInDegree = input.readDouble();
 
-		/**
-		 * Size of the MembershipDegree map.
-		 */
-		int memSize;
-		memSize = input.readInt();
-
-		Long leaderID;
-		Double memDegree;
-		this.membershipDegree = new HashMap<Long, Double>();
+		/** the oldest versions wrote the size of the MembershipDegree map here */
+		int layout = input.readInt();
+		if (layout >= 0) {
+			readOldestLayout(input, layout);
+			return;
+		}
+		if (layout != DELTA_DISCOL) {
+			throw new IOException("readFields: Unknown layout " + layout);
+		}
 
+		int memSize = input.readInt();
+		this.membershipDegree = new Int2DoubleOpenHashMap(memSize);
 		for (int i = 0; i < memSize; ++i) {
-			leaderID = input.readLong();
-			memDegree = input.readDouble();
+			int leaderIndex = input.readInt();
+			double memDegree = input.readDouble();
+
+			this.membershipDegree.put(leaderIndex, memDegree);
+		}
+
+		int numEntries = WritableUtils.readVInt(input);
+		this.disColIDs = new long[numEntries];
+		this.disColValues = new double[numEntries];
+
+		long neighborID = 0;
+		for (int i = 0; i < numEntries; ++i) {
+			neighborID += WritableUtils.readVLong(input);
+			this.disColIDs[i] = neighborID;
+		}
+		for (int i = 0; i < numEntries; ++i) {
+			this.disColValues[i] = input.readDouble();
+		}
+
+		this.daEntry = input.readDouble();
+
+		int numPredecessors = input.readInt();
+		this.predecessors = new long[numPredecessors];
+		this.predecessorWeights = new double[numPredecessors];
+		for (int i = 0; i < numPredecessors; ++i) {
+			this.predecessors[i] = input.readLong();
+		}
+		for (int i = 0; i < numPredecessors; ++i) {
+			this.predecessorWeights[i] = input.readDouble();
+		}
 
-			this.membershipDegree.put(leaderID, memDegree);
+		this.followerDegree = input.readDouble();
+		this.leadership = input.readDouble();
+
+		int countSize = input.readInt();
+		this.memberCounts = new Int2IntOpenHashMap(countSize);
+		for (int i = 0; i < countSize; ++i) {
+			int leaderIndex = input.readInt();
+			this.memberCounts.put(leaderIndex, input.readInt());
+		}
+
+		/** -1 if there is no best valid cover */
+		int bestValidSize = WritableUtils.readVInt(input);
+		this.bestValidMemDeg = null;
+		if (bestValidSize >= 0) {
+			this.bestValidMemDeg = new Int2DoubleOpenHashMap(bestValidSize);
+			for (int i = 0; i < bestValidSize; ++i) {
+				int leaderIndex = WritableUtils.readVInt(input);
+				this.bestValidMemDeg.put(leaderIndex, input.readDouble());
+			}
+		}
+
+		int numMemberships = WritableUtils.readVInt(input);
+		this.memberLeaderIDs = new long[numMemberships];
+		this.memberDegrees = new double[numMemberships];
+		long leaderID = 0;
+		for (int i = 0; i < numMemberships; ++i) {
+			leaderID += WritableUtils.readVLong(input);
+			this.memberLeaderIDs[i] = leaderID;
+		}
+		for (int i = 0; i < numMemberships; ++i) {
+			this.memberDegrees[i] = input.readDouble();
 		}
-		
-		/*memSize = input.readInt();
-		this.bestValidMemDeg = new HashMap<Long, Double>();
 
+		this.restartEpoch = WritableUtils.readVLong(input);
+	}
+
+	/**
+	 * Reads the rest of a value written by the oldest versions. Their
+	 * membership map is keyed by leader ID, which has no leader index without
+	 * the global leader table, so the memberships are kept as the leader IDs
+	 * the output format writes. disCol is dense with all entries.
+	 */
+	private void readOldestLayout(DataInput input, int memSize)
+			throws IOException {
+		long[] leaderIDs = new long[memSize];
+		double[] memDegrees = new double[memSize];
 		for (int i = 0; i < memSize; ++i) {
-			leaderID = input.readLong();
-			memDegree = input.readDouble();
+			leaderIDs[i] = input.readLong();
+			memDegrees[i] = input.readDouble();
+		}
+		DMIDOutEdges.sortByID(leaderIDs, memDegrees, memSize);
+		this.membershipDegree = newMembershipDegree();
+		this.memberLeaderIDs = leaderIDs;
+		this.memberDegrees = memDegrees;
+
+		long disSize = input.readLong();
+		int numEntries = 0;
+		long[] ids = new long[16];
+		double[] values = new double[16];
 
-			//this.bestValidMemDeg.put(leaderID, memDegree);
-		}*/
-		
-		/**
-		 * Size of the disassortativity vector disCol.
-		 */
-		
-		this.disSize = input.readLong();
-		
-		for(int i = 0; i < disSize; ++i) {
-			this.disCol.set(i, input.readDouble());
+		for (long i = 0; i < disSize; ++i) {
+			double disValue = input.readDouble();
+			if (disValue != 0) {
+				if (numEntries == ids.length) {
+					ids = Arrays.copyOf(ids, 2 * numEntries);
+					values = Arrays.copyOf(values, 2 * numEntries);
+				}
+				ids[numEntries] = i;
+				values[numEntries] = disValue;
+				numEntries++;
+			}
 		}
+		setDisCol(ids, values, numEntries);
+
+		this.daEntry = 0;
+		this.predecessors = new long[0];
+		this.predecessorWeights = new double[0];
+		this.followerDegree = 0;
+		this.leadership = 0;
+		this.memberCounts = new Int2IntOpenHashMap(0);
+		this.bestValidMemDeg = null;
+		this.restartEpoch = -1;
 	}
 
 	@Override
 	public void write(DataOutput output) throws IOException {
 
 		output.writeDouble(this.weightedInDegree);
+		output.writeInt(DELTA_DISCOL);
 
 		int memSize = this.membershipDegree.size();
 		output.writeInt(memSize);
 
-		for (Map.Entry<Long, Double> entry : this.membershipDegree.entrySet()) {
-			output.writeLong(entry.getKey());
-			output.writeDouble(entry.getValue());
+		for (Int2DoubleMap.Entry entry : this.membershipDegree
+				.int2DoubleEntrySet()) {
+			output.writeInt(entry.getIntKey());
+			output.writeDouble(entry.getDoubleValue());
 		}
-		
-		/*memSize = this.bestValidMemDeg.size();
-		output.writeInt(memSize);
-		
-		for (Map.Entry<Long, Double> entry : this.bestValidMemDeg.entrySet()) {
-			output.writeLong(entry.getKey());
-			output.writeDouble(entry.getValue());
+
+		/** only the non-zero entries of disCol, O(out-degree) */
+		WritableUtils.writeVInt(output, this.disColIDs.length);
+
+		long previousID = 0;
+		for (long neighborID : this.disColIDs) {
+			WritableUtils.writeVLong(output, neighborID - previousID);
+			previousID = neighborID;
 		}
-		*/
-		output.writeLong(this.disSize);
-		
-		for (int i=0; i < this.disSize; ++i) {
-			output.writeDouble(this.disCol.get(i));
+		for (double disValue : this.disColValues) {
+			output.writeDouble(disValue);
 		}
+
+		output.writeDouble(this.daEntry);
+
+		output.writeInt(this.predecessors.length);
+		for (long predecessorID : this.predecessors) {
+			output.writeLong(predecessorID);
+		}
+		for (double predecessorWeight : this.predecessorWeights) {
+			output.writeDouble(predecessorWeight);
+		}
+
+		output.writeDouble(this.followerDegree);
+		output.writeDouble(this.leadership);
+
+		output.writeInt(this.memberCounts.size());
+		for (Int2IntMap.Entry entry : this.memberCounts.int2IntEntrySet()) {
+			output.writeInt(entry.getIntKey());
+			output.writeInt(entry.getIntValue());
+		}
+
+		if (this.bestValidMemDeg == null) {
+			WritableUtils.writeVInt(output, -1);
+		} else {
+			WritableUtils.writeVInt(output, this.bestValidMemDeg.size());
+			for (Int2DoubleMap.Entry entry : this.bestValidMemDeg
+					.int2DoubleEntrySet()) {
+				WritableUtils.writeVInt(output, entry.getIntKey());
+				output.writeDouble(entry.getDoubleValue());
+			}
+		}
+
+		/** varint deltas of the sorted leader IDs followed by the degrees */
+		WritableUtils.writeVInt(output, this.memberLeaderIDs.length);
+		long previousLeaderID = 0;
+		for (long leaderID : this.memberLeaderIDs) {
+			WritableUtils.writeVLong(output, leaderID - previousLeaderID);
+			previousLeaderID = leaderID;
+		}
+		for (double memDegree : this.memberDegrees) {
+			output.writeDouble(memDegree);
+		}
+
+		WritableUtils.writeVLong(output, this.restartEpoch);
 	}
 
 	public Double getWeightedInDegree() {
@@ -146,36 +339,196 @@ public class DMIDVertexValue implements Writable {
 		this.weightedInDegree = weightedInDegree;
 	}
 
-	public HashMap<Long, Double> getMembershipDegree() {
+	public Int2DoubleOpenHashMap getMembershipDegree() {
 		return membershipDegree;
 	}
 
-/*	public void setBestValidMemDeg(HashMap<Long, Double> bestValidMemDeg) {
+	/**
+	 * Sets the best valid cover of the binary search variant. The map is not
+	 * copied, the cascade has to continue with a new membership degree map.
+	 */
+	public void setBestValidMemDeg(Int2DoubleOpenHashMap bestValidMemDeg) {
 		this.bestValidMemDeg = bestValidMemDeg;
 	}
-*/	
-/*	public HashMap<Long, Double> getBestValidMemDeg() {
+
+	public Int2DoubleOpenHashMap getBestValidMemDeg() {
 		return bestValidMemDeg;
 	}
-*/
-	public void setMembershipDegree(HashMap<Long, Double> membershipDegree) {
+
+	public void setMembershipDegree(Int2DoubleOpenHashMap membershipDegree) {
 		this.membershipDegree = membershipDegree;
 	}
+
+	/**
+	 * Returns an empty membership degree map. Most vertices belong to few
+	 * communities, so the map starts with the smallest capacity.
+	 */
+	public static Int2DoubleOpenHashMap newMembershipDegree() {
+		return new Int2DoubleOpenHashMap(0);
+	}
 	
-	public Long getDisSize() {
-		return this.disSize;
+	public long[] getDisColIDs() {
+		return this.disColIDs;
 	}
 
-	public void setDisSize(Long disSize) {
-		this.disSize = disSize;
+	public double[] getDisColValues() {
+		return this.disColValues;
 	}
-	
-	public DoubleSparseVector getDisCol() {
-		return this.disCol;
+
+	/**
+	 * Returns the entry of disCol that belongs to the successor neighborID.
+	 * Binary search over the sorted IDs, O(log(out-degree)).
+	 */
+	public double getDisValue(long neighborID) {
+		int index = Arrays.binarySearch(this.disColIDs, neighborID);
+		return index >= 0 ? this.disColValues[index] : 0.0;
+	}
+
+	/**
+	 * Saves the first numEntries entries of ids and values as disCol. The
+	 * arrays are trimmed and sorted by ID in place.
+	 */
+	public void setDisCol(long[] ids, double[] values, int numEntries) {
+		long[] disIDs = Arrays.copyOf(ids, numEntries);
+		double[] disValues = Arrays.copyOf(values, numEntries);
+
+		DMIDOutEdges.sortByID(disIDs, disValues, numEntries);
+
+		this.disColIDs = disIDs;
+		this.disColValues = disValues;
+	}
+
+	public double getDAEntry() {
+		return this.daEntry;
+	}
+
+	public void setDAEntry(double daEntry) {
+		this.daEntry = daEntry;
+	}
+
+	public long[] getPredecessors() {
+		return this.predecessors;
+	}
+
+	/** Weights of the edges from the predecessors, same order as getPredecessors */
+	public double[] getPredecessorWeights() {
+		return this.predecessorWeights;
+	}
+
+	/**
+	 * Returns the weight of the edge from the predecessor predecessorID to
+	 * this vertex, 0 if there is no such edge. Binary search,
+	 * O(log(in-degree)).
+	 */
+	public double getPredecessorWeight(long predecessorID) {
+		int index = Arrays.binarySearch(this.predecessors, predecessorID);
+		return index >= 0 ? this.predecessorWeights[index] : 0.0;
+	}
+
+	/**
+	 * Saves the first numEntries entries of ids and weights as the
+	 * predecessors of this vertex. Sorted by ID, the weights of parallel edges
+	 * are summed up.
+	 */
+	public void setPredecessors(long[] ids, double[] weights, int numEntries) {
+		long[] predecessorIDs = Arrays.copyOf(ids, numEntries);
+		double[] edgeWeights = Arrays.copyOf(weights, numEntries);
+
+		DMIDOutEdges.sortByID(predecessorIDs, edgeWeights, numEntries);
+
+		int numPredecessors = 0;
+		for (int i = 0; i < numEntries; ++i) {
+			if (numPredecessors > 0
+					&& predecessorIDs[numPredecessors - 1] == predecessorIDs[i]) {
+				edgeWeights[numPredecessors - 1] += edgeWeights[i];
+			} else {
+				predecessorIDs[numPredecessors] = predecessorIDs[i];
+				edgeWeights[numPredecessors] = edgeWeights[i];
+				numPredecessors++;
+			}
+		}
+
+		this.predecessors = Arrays.copyOf(predecessorIDs, numPredecessors);
+		this.predecessorWeights = Arrays.copyOf(edgeWeights, numPredecessors);
+	}
+
+	public double getFollowerDegree() {
+		return this.followerDegree;
+	}
+
+	public void setFollowerDegree(double followerDegree) {
+		this.followerDegree = followerDegree;
+	}
+
+	public double getLeadership() {
+		return this.leadership;
+	}
+
+	public void setLeadership(double leadership) {
+		this.leadership = leadership;
+	}
+
+	/**
+	 * Translates the leader indices of the non-zero membership degrees into
+	 * the IDs of the global leaders, see getMemberLeaderIDs. The table may be
+	 * null if the vertex is member of no community.
+	 */
+	public void setMemberLeaderIDs(GlobalLeaderTable globalLeaders) {
+		int numMemberships = 0;
+		for (Int2DoubleMap.Entry entry : this.membershipDegree
+				.int2DoubleEntrySet()) {
+			if (entry.getDoubleValue() != 0) {
+				numMemberships++;
+			}
+		}
+		if (this.memberLeaderIDs.length != numMemberships) {
+			this.memberLeaderIDs = new long[numMemberships];
+			this.memberDegrees = new double[numMemberships];
+		}
+		if (numMemberships == 0) {
+			return;
+		}
+
+		int i = 0;
+		for (Int2DoubleMap.Entry entry : this.membershipDegree
+				.int2DoubleEntrySet()) {
+			if (entry.getDoubleValue() != 0) {
+				this.memberLeaderIDs[i] = globalLeaders.getLeaderID(entry
+						.getIntKey());
+				this.memberDegrees[i] = entry.getDoubleValue();
+				i++;
+			}
+		}
+		DMIDOutEdges.sortByID(this.memberLeaderIDs, this.memberDegrees,
+				numMemberships);
+	}
+
+	/**
+	 * IDs of the global leaders of the communities of this vertex in
+	 * ascending order, as of the last cascading step of the vertex
+	 */
+	public long[] getMemberLeaderIDs() {
+		return this.memberLeaderIDs;
+	}
+
+	/** Membership degrees in the order of getMemberLeaderIDs */
+	public double[] getMemberDegrees() {
+		return this.memberDegrees;
+	}
+
+	public Int2IntOpenHashMap getMemberCounts() {
+		return this.memberCounts;
+	}
+
+	public void setMemberCounts(Int2IntOpenHashMap memberCounts) {
+		this.memberCounts = memberCounts;
+	}
+
+	public long getRestartEpoch() {
+		return this.restartEpoch;
 	}
 
-	public void setDisCol(DoubleSparseVector disCol, Long disSize) {
-		this.disCol = disCol;
-		this.disSize = disSize;
+	public void setRestartEpoch(long restartEpoch) {
+		this.restartEpoch = restartEpoch;
 	}
 }
@@ -0,0 +1,71 @@
+package org.apache.giraph.examples.utils;
+
+import java.util.Arrays;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+
+import org.apache.giraph.examples.DMIDComputation;
+import org.apache.giraph.worker.WorkerContext;
+import org.apache.hadoop.io.LongWritable;
+
+/**
+ * Worker context associated with {@link DMIDComputation}. Holds the table of
+ * global leaders that is shared by all vertices of this worker during the
+ * cascading behavior phase. Collects the global leaders found on this worker
+ * so that only one sorted table per worker is aggregated.
+ */
+public class DMIDWorkerContext extends WorkerContext {
+
+	/**
+	 * Global leaders of the cascading behavior phase, broadcast in the GL
+	 * aggregator.
+	 */
+	private GlobalLeaderTable globalLeaders;
+
+	/** IDs of the global leaders found on this worker in this superstep */
+	private final LongArrayList localLeaders = new LongArrayList();
+
+	@Override
+	public void preApplication() throws InstantiationException,
+			IllegalAccessException {
+	}
+
+	@Override
+	public void postApplication() {
+	}
+
+	@Override
+	public void preSuperstep() {
+		LongWritable iterCount = getAggregatedValue(DMIDComputation.ITERATION_AGG);
+		if (iterCount.get() != 0) {
+			/** Cascading behavior started, the GL aggregator is set */
+			globalLeaders = getAggregatedValue(DMIDComputation.GL_AGG);
+		}
+	}
+
+	@Override
+	public void postSuperstep() {
+		if (!localLeaders.isEmpty()) {
+			long[] leaderIDs = localLeaders.toLongArray();
+			Arrays.sort(leaderIDs);
+			aggregate(DMIDComputation.GL_AGG, new GlobalLeaderTable(leaderIDs));
+			localLeaders.clear();
+		}
+	}
+
+	/**
+	 * Adds the global leaders found by one compute thread. Called by each
+	 * thread at the end of the superstep.
+	 */
+	public synchronized void addGlobalLeaders(LongArrayList leaderIDs) {
+		localLeaders.addAll(leaderIDs);
+	}
+
+	/**
+	 * Returns the global leaders of the cascading behavior phase, null before
+	 * the phase started.
+	 */
+	public GlobalLeaderTable getGlobalLeaders() {
+		return globalLeaders;
+	}
+}
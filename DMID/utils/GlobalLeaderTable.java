@@ -0,0 +1,111 @@
+package org.apache.giraph.examples.utils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+
+/**
+ * Indexed table of the global leaders found by DMID. Holds the IDs of the
+ * global leaders in ascending order. The position of a leader in the table is
+ * its leader index, which is used instead of the leader ID in the membership
+ * degrees of the vertices and in the messages of the cascading behavior phase.
+ * Each worker adds one sorted table of the global leaders it found to the GL
+ * aggregator, which broadcasts the union to all workers, so the indices are
+ * the same on every worker.
+ */
+public class GlobalLeaderTable implements Writable {
+
+	/** IDs of the global leaders in ascending order */
+	private long[] leaderIDs;
+
+	/**
+	 * Default constructor, empty table
+	 */
+	public GlobalLeaderTable() {
+		this(new long[0]);
+	}
+
+	/**
+	 * Parametrized constructor
+	 *
+	 * @param leaderIDs
+	 *            IDs of the global leaders in ascending order
+	 */
+	public GlobalLeaderTable(long[] leaderIDs) {
+		this.leaderIDs = leaderIDs;
+	}
+
+	@Override
+	public void readFields(DataInput input) throws IOException {
+		int numLeaders = WritableUtils.readVInt(input);
+		this.leaderIDs = new long[numLeaders];
+
+		long leaderID = 0;
+		for (int i = 0; i < numLeaders; ++i) {
+			leaderID += WritableUtils.readVLong(input);
+			this.leaderIDs[i] = leaderID;
+		}
+	}
+
+	@Override
+	public void write(DataOutput output) throws IOException {
+		/** varint deltas of the sorted IDs */
+		WritableUtils.writeVInt(output, this.leaderIDs.length);
+
+		long previousID = 0;
+		for (long leaderID : this.leaderIDs) {
+			WritableUtils.writeVLong(output, leaderID - previousID);
+			previousID = leaderID;
+		}
+	}
+
+	/** Number of global leaders */
+	public int size() {
+		return leaderIDs.length;
+	}
+
+	/** ID of the global leader with the given leader index */
+	public long getLeaderID(int leaderIndex) {
+		return leaderIDs[leaderIndex];
+	}
+
+	/**
+	 * Leader index of the vertex with the given ID. O(log L).
+	 *
+	 * @return the leader index or -1 if the vertex is no global leader
+	 */
+	public int indexOf(long vertexID) {
+		int index = Arrays.binarySearch(leaderIDs, vertexID);
+		return index >= 0 ? index : -1;
+	}
+
+	/**
+	 * Adds the leaders of the other table to this table. O(L + L').
+	 */
+	public void union(GlobalLeaderTable other) {
+		long[] otherIDs = other.leaderIDs;
+		if (otherIDs.length == 0) {
+			return;
+		}
+		long[] merged = new long[leaderIDs.length + otherIDs.length];
+		int i = 0, j = 0, numLeaders = 0;
+
+		while (i < leaderIDs.length || j < otherIDs.length) {
+			long nextID;
+			if (j == otherIDs.length
+					|| (i < leaderIDs.length && leaderIDs[i] <= otherIDs[j])) {
+				nextID = leaderIDs[i++];
+			} else {
+				nextID = otherIDs[j++];
+			}
+			if (numLeaders == 0 || merged[numLeaders - 1] != nextID) {
+				merged[numLeaders++] = nextID;
+			}
+		}
+		this.leaderIDs = Arrays.copyOf(merged, numLeaders);
+	}
+}
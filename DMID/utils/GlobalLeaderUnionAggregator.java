@@ -0,0 +1,21 @@
+package org.apache.giraph.examples.utils;
+
+import org.apache.giraph.aggregators.BasicAggregator;
+
+/**
+ * Aggregator for the {@link GlobalLeaderTable}. The aggregated table contains
+ * the leaders of all aggregated tables.
+ */
+public class GlobalLeaderUnionAggregator extends
+		BasicAggregator<GlobalLeaderTable> {
+
+	@Override
+	public void aggregate(GlobalLeaderTable value) {
+		getAggregatedValue().union(value);
+	}
+
+	@Override
+	public GlobalLeaderTable createInitialValue() {
+		return new GlobalLeaderTable();
+	}
+}
@@ -0,0 +1,26 @@
+package org.apache.giraph.examples.utils;
+
+import org.apache.giraph.combiner.MessageCombiner;
+import org.apache.hadoop.io.LongWritable;
+
+/**
+ * Combines the membership replies of the cascading behavior phase that are
+ * sent to the same vertex into one message with a count per leader index. The
+ * frontier messages of superstep10 have no leader indices and are combined
+ * into one empty message. Set by the master only in the supersteps in which
+ * these messages are sent.
+ */
+public class LeaderCountCombiner extends
+		MessageCombiner<LongWritable, LongDoubleMessage> {
+
+	@Override
+	public void combine(LongWritable vertexIndex,
+			LongDoubleMessage originalMessage, LongDoubleMessage messageToCombine) {
+		originalMessage.addLeaderCounts(messageToCombine);
+	}
+
+	@Override
+	public LongDoubleMessage createInitialMessage() {
+		return new LongDoubleMessage();
+	}
+}
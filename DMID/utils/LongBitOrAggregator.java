@@ -0,0 +1,21 @@
+package org.apache.giraph.examples.utils;
+
+import org.apache.giraph.aggregators.BasicAggregator;
+import org.apache.hadoop.io.LongWritable;
+
+/**
+ * Aggregator for bit sets stored in a long. The aggregated value has every
+ * bit set that is set in one of the aggregated values.
+ */
+public class LongBitOrAggregator extends BasicAggregator<LongWritable> {
+
+	@Override
+	public void aggregate(LongWritable value) {
+		getAggregatedValue().set(getAggregatedValue().get() | value.get());
+	}
+
+	@Override
+	public LongWritable createInitialValue() {
+		return new LongWritable(0);
+	}
+}
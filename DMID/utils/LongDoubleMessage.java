@@ -3,42 +3,212 @@ package org.apache.giraph.examples.utils;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.Arrays;
 
 import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
 
 /**
- * Simple message that contains the source vertex id and a double value.
+ * Simple message that contains the source vertex id and a double value. In
+ * the cascading behavior phase the message contains a list of leader indices
+ * in ascending order instead of the value, optionally with a count per leader.
+ *
+ * The first byte of the serialized message is the payload type, only the
+ * fields of that type are written. Ids, indices and counts are varints, a
+ * value is written with the smallest of three lossless encodings.
  */
 public class LongDoubleMessage implements Writable {
-		
+
+		/** Payload type: source vertex id and a double value */
+		private static final byte ID_DOUBLE = 0;
+		/** Payload type: source vertex id and a value that is a float */
+		private static final byte ID_FLOAT = 1;
+		/** Payload type: source vertex id and a value 1/k with integer k */
+		private static final byte ID_RECIPROCAL = 2;
+		/** Payload type: source vertex id and leader indices (request) */
+		private static final byte ID_LEADERS = 3;
+		/** Payload type: leader indices only (reply) */
+		private static final byte LEADERS = 4;
+		/** Payload type: leader indices with a count each (combined replies) */
+		private static final byte LEADER_COUNTS = 5;
+
+		/**
+		 * Payload type of the message. ID_DOUBLE stands for all value
+		 * messages, write chooses the encoding of the value.
+		 */
+		private byte type = ID_DOUBLE;
+
         /** Source vertex id */
         public long sourceVertexId;
 
 		/** Value */
         public double value;
-        
+
+		/**
+		 * Leader indices, see {@link GlobalLeaderTable}. Only the first
+		 * numLeaders entries are part of the message.
+		 */
+        private int[] leaderIndices = new int[0];
+
+		/** Number of leader indices */
+        private int numLeaders;
+
+		/**
+		 * Count per leader index, set by {@link LeaderCountCombiner}. Only
+		 * used if the type is LEADER_COUNTS, otherwise every leader counts
+		 * once.
+		 */
+        private int[] leaderCounts = new int[0];
+
         public LongDoubleMessage() {}
-        
+
         public LongDoubleMessage(long sourceVertexId, double value) {
             this.sourceVertexId = sourceVertexId;
             this.value = value;
         }
-        
+
+        public LongDoubleMessage(long sourceVertexId, int[] leaderIndices,
+        		int numLeaders) {
+            this.type = ID_LEADERS;
+            this.sourceVertexId = sourceVertexId;
+            this.leaderIndices = leaderIndices;
+            this.numLeaders = numLeaders;
+        }
+
+		/**
+		 * Message without a source vertex id, for replies whose receiver does
+		 * not need to know the sender. The source vertex id is read as 0.
+		 */
+        public LongDoubleMessage(int[] leaderIndices, int numLeaders) {
+            this.type = LEADERS;
+            this.leaderIndices = leaderIndices;
+            this.numLeaders = numLeaders;
+        }
+
         @Override
         public void readFields(DataInput input) throws IOException {
-            sourceVertexId = input.readLong();
-            value = input.readDouble();
+            /** messages are reused by the message iterator, reset all fields */
+            byte payloadType = input.readByte();
+            sourceVertexId = 0;
+            value = 0;
+            numLeaders = 0;
+            /** the value encoding is chosen again on write */
+            type = payloadType <= ID_RECIPROCAL ? ID_DOUBLE : payloadType;
+
+            switch (payloadType) {
+            case ID_DOUBLE:
+            	sourceVertexId = WritableUtils.readVLong(input);
+            	value = input.readDouble();
+            	break;
+            case ID_FLOAT:
+            	sourceVertexId = WritableUtils.readVLong(input);
+            	value = input.readFloat();
+            	break;
+            case ID_RECIPROCAL:
+            	sourceVertexId = WritableUtils.readVLong(input);
+            	value = 1.0 / WritableUtils.readVInt(input);
+            	break;
+            case ID_LEADERS:
+            	sourceVertexId = WritableUtils.readVLong(input);
+            	readLeaderIndices(input);
+            	break;
+            case LEADERS:
+            	readLeaderIndices(input);
+            	break;
+            case LEADER_COUNTS:
+            	readLeaderIndices(input);
+            	if (leaderCounts.length < numLeaders) {
+            		leaderCounts = new int[numLeaders];
+            	}
+            	for (int i = 0; i < numLeaders; ++i) {
+            		leaderCounts[i] = WritableUtils.readVInt(input);
+            	}
+            	break;
+            default:
+            	throw new IOException("readFields: Unknown message type "
+            			+ payloadType);
+            }
         }
         @Override
         public void write(DataOutput output) throws IOException {
-            output.writeLong(sourceVertexId);
-            output.writeDouble(value);
+            if (type != ID_DOUBLE) {
+            	output.writeByte(type);
+            	if (type == ID_LEADERS) {
+            		WritableUtils.writeVLong(output, sourceVertexId);
+            	}
+            	writeLeaderIndices(output);
+            	if (type == LEADER_COUNTS) {
+            		for (int i = 0; i < numLeaders; ++i) {
+            			WritableUtils.writeVInt(output, leaderCounts[i]);
+            		}
+            	}
+            	return;
+            }
+
+            /**
+             * Values like 1/k (shares, initial DA entry) and integral weights
+             * need less than 8 bytes and are read back without loss.
+             */
+            int denominator = getReciprocalDenominator(value);
+            if (denominator != 0) {
+            	output.writeByte(ID_RECIPROCAL);
+            	WritableUtils.writeVLong(output, sourceVertexId);
+            	WritableUtils.writeVInt(output, denominator);
+            } else if ((float) value == value) {
+            	output.writeByte(ID_FLOAT);
+            	WritableUtils.writeVLong(output, sourceVertexId);
+            	output.writeFloat((float) value);
+            } else {
+            	output.writeByte(ID_DOUBLE);
+            	WritableUtils.writeVLong(output, sourceVertexId);
+            	output.writeDouble(value);
+            }
         }
+
+		/** Reads numLeaders and the varint deltas of the ascending indices */
+		private void readLeaderIndices(DataInput input) throws IOException {
+			numLeaders = WritableUtils.readVInt(input);
+			if (leaderIndices.length < numLeaders) {
+				leaderIndices = new int[numLeaders];
+			}
+			int leaderIndex = 0;
+			for (int i = 0; i < numLeaders; ++i) {
+				leaderIndex += WritableUtils.readVInt(input);
+				leaderIndices[i] = leaderIndex;
+			}
+		}
+
+		/** Writes numLeaders and the varint deltas of the ascending indices */
+		private void writeLeaderIndices(DataOutput output) throws IOException {
+			WritableUtils.writeVInt(output, numLeaders);
+			int previousIndex = 0;
+			for (int i = 0; i < numLeaders; ++i) {
+				WritableUtils.writeVInt(output, leaderIndices[i] - previousIndex);
+				previousIndex = leaderIndices[i];
+			}
+		}
+
+		/**
+		 * Returns k if value is exactly 1.0 / k for an integer k > 0,
+		 * otherwise 0.
+		 */
+		private static int getReciprocalDenominator(double value) {
+			if (!(value > 0 && value <= 1)) {
+				return 0;
+			}
+			double denominator = Math.rint(1.0 / value);
+			if (denominator > Integer.MAX_VALUE
+					|| 1.0 / (int) denominator != value) {
+				return 0;
+			}
+			return (int) denominator;
+		}
+
         @Override
         public String toString() {
             return "(sourceVertexId=" + sourceVertexId + ",value=" + value + ")";
         }
-        
+
         public long getSourceVertexId() {
 			return sourceVertexId;
 		}
@@ -54,5 +224,73 @@ public class LongDoubleMessage implements Writable {
 		public void setValue(double value) {
 			this.value = value;
 		}
+
+		public int[] getLeaderIndices() {
+			return leaderIndices;
+		}
+
+		public int getNumLeaders() {
+			return numLeaders;
+		}
+
+		/**
+		 * Sets the leader indices of a request or reply message. The array is
+		 * not copied.
+		 */
+		public void setLeaderIndices(int[] leaderIndices, int numLeaders) {
+			this.leaderIndices = leaderIndices;
+			this.numLeaders = numLeaders;
+		}
+
+		/** Count of the i-th leader index of the message */
+		public int getLeaderCount(int i) {
+			return type == LEADER_COUNTS ? leaderCounts[i] : 1;
+		}
+
+		/**
+		 * Adds the leader counts of the other message to this message. Both
+		 * lists of leader indices are in ascending order. O(L + L'). The
+		 * source vertex id of the result is not defined.
+		 *
+		 * Merges in place from the back, the arrays of this message only grow
+		 * if the merged list does not fit. This message must own its arrays
+		 * (a message of the combiner or one that was read), the arrays of the
+		 * other message are reused by the message iterator and not kept.
+		 */
+		public void addLeaderCounts(LongDoubleMessage other) {
+			int capacity = numLeaders + other.numLeaders;
+			if (leaderIndices.length < capacity) {
+				leaderIndices = Arrays.copyOf(leaderIndices,
+						Math.max(capacity, 2 * leaderIndices.length));
+			}
+			if (leaderCounts.length < leaderIndices.length) {
+				leaderCounts = Arrays.copyOf(leaderCounts, leaderIndices.length);
+			}
+			if (type != LEADER_COUNTS) {
+				Arrays.fill(leaderCounts, 0, numLeaders, 1);
+			}
+
+			/** the next free position from the back is k - 1 > i */
+			int i = numLeaders - 1, j = other.numLeaders - 1, k = capacity;
+			while (j >= 0) {
+				k--;
+				if (i >= 0 && leaderIndices[i] > other.leaderIndices[j]) {
+					leaderIndices[k] = leaderIndices[i];
+					leaderCounts[k] = leaderCounts[i--];
+				} else if (i >= 0 && leaderIndices[i] == other.leaderIndices[j]) {
+					leaderIndices[k] = leaderIndices[i];
+					leaderCounts[k] = leaderCounts[i--]
+							+ other.getLeaderCount(j--);
+				} else {
+					leaderIndices[k] = other.leaderIndices[j];
+					leaderCounts[k] = other.getLeaderCount(j--);
+				}
+			}
+			/** close the gap left by leaders that were in both lists */
+			System.arraycopy(leaderIndices, k, leaderIndices, i + 1, capacity - k);
+			System.arraycopy(leaderCounts, k, leaderCounts, i + 1, capacity - k);
+			numLeaders = i + 1 + capacity - k;
+			type = LEADER_COUNTS;
+		}
     }
 